@@ -0,0 +1,163 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The app's background threads, by purpose:
+//   device()   one thread, so SDK calls (init, capture, template) never overlap
+//   matching() small fork/join pool shared with IdentificationEngine and MatchActivity. The
+//              SDK matcher is not thread-safe, so a search runs on one worker and more cores
+//              would not make it faster (only a concurrent TemplateMatcher is split across
+//              workers); the second worker picks up the next request while one is winding down
+//   io()       a few threads for database and file work
+// Threads are named so they can be told apart in traces. After shutdown() the next getInstance()
+// builds a fresh set.
+public class AppExecutors {
+
+    private static final int IO_THREADS = 3;
+    private static final int MATCH_THREADS = 2;
+
+    // ThreadPoolExecutor that records how long tasks wait in the queue and how deep it gets.
+    public static class MonitoredExecutor extends ThreadPoolExecutor {
+        private final String name;
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicInteger peakQueue = new AtomicInteger();
+        private final AtomicLong failures = new AtomicLong();
+
+        MonitoredExecutor(String name, int threads, int priority) {
+            super(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), namedThreads(name, priority));
+            this.name = name;
+            allowCoreThreadTimeOut(threads > 1);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            long queuedAt = System.nanoTime();
+            submitted.incrementAndGet();
+            super.execute(() -> {
+                long waited = System.nanoTime() - queuedAt;
+                totalWaitNanos.addAndGet(waited);
+                long max;
+                while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited)) { }
+                command.run();
+            });
+            int depth = getQueue().size();
+            int peak;
+            while (depth > (peak = peakQueue.get()) && !peakQueue.compareAndSet(peak, depth)) { }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            super.afterExecute(r, t);
+            if (t != null) failures.incrementAndGet();
+        }
+
+        public long getSubmittedCount() { return submitted.get(); }
+        public int getQueueDepth() { return getQueue().size(); }
+        public int getPeakQueueDepth() { return peakQueue.get(); }
+        public long getFailureCount() { return failures.get(); }
+
+        public float getMeanQueueWaitMs() {
+            long done = getCompletedTaskCount();
+            return done == 0 ? 0 : totalWaitNanos.get() / 1e6f / done;
+        }
+
+        public float getMaxQueueWaitMs() { return maxWaitNanos.get() / 1e6f; }
+
+        public String getStats() {
+            return String.format(Locale.US, "%s: %d submitted, %d done, %d active, queue %d (peak %d), wait avg %.1f ms max %.1f ms, %d failed",
+                    name, getSubmittedCount(), getCompletedTaskCount(), getActiveCount(), getQueueDepth(),
+                    getPeakQueueDepth(), getMeanQueueWaitMs(), getMaxQueueWaitMs(), getFailureCount());
+        }
+    }
+
+    private static AppExecutors instance;
+
+    private final MonitoredExecutor device;
+    private final MonitoredExecutor io;
+    private final ForkJoinPool matching;
+
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null || instance.isShutdown()) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    private AppExecutors() {
+        device = new MonitoredExecutor("device", 1, Thread.NORM_PRIORITY + 1);
+        io = new MonitoredExecutor("io", IO_THREADS, Thread.NORM_PRIORITY - 1);
+        AtomicInteger matchThreads = new AtomicInteger();
+        matching = new ForkJoinPool(MATCH_THREADS, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("match-" + matchThreads.incrementAndGet());
+            return t;
+        }, null, false);
+    }
+
+    public MonitoredExecutor device() { return device; }
+    public MonitoredExecutor io() { return io; }
+    public ForkJoinPool matching() { return matching; }
+
+    public boolean isShutdown() {
+        return device.isShutdown() || io.isShutdown() || matching.isShutdown();
+    }
+
+    public String getStats() {
+        return device.getStats() + "\n" + io.getStats() + "\n" +
+                String.format(Locale.US, "matching: parallelism %d, %d active, %d queued submissions, %d steals",
+                        matching.getParallelism(), matching.getActiveThreadCount(),
+                        matching.getQueuedSubmissionCount(), matching.getStealCount());
+    }
+
+    // Stops taking work; what is already queued still runs, then the threads exit.
+    public void shutdown() {
+        device.shutdown();
+        io.shutdown();
+        matching.shutdown();
+    }
+
+    // Stops taking work, lets queued work finish (pending image and database writes matter), and
+    // interrupts whatever is still running after the timeout. Returns true if everything drained.
+    public boolean shutdown(long timeoutMs) {
+        shutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        boolean drained = true;
+        try {
+            drained &= io.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+            drained &= device.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+            drained &= matching.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        if (!drained) {
+            device.shutdownNow();
+            io.shutdownNow();
+            matching.shutdownNow();
+        }
+        return drained;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static ThreadFactory namedThreads(String name, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setPriority(priority);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.mantra.biometricauthmorfin;
+
+import com.mantra.morfinauth.DeviceInfo;
+import com.mantra.morfinauth.enums.DeviceModel;
+import com.mantra.morfinauth.enums.ImageFormat;
+import com.mantra.morfinauth.enums.TemplateFormat;
+
+// The MorfinAuth calls the app relies on. Return codes follow the SDK: 0 is success,
+// -2019 is a capture timeout. Events are delivered to the MorfinAuth_Callback the
+// implementation was created with.
+public interface BiometricDevice {
+
+    int ERROR_TIMEOUT = -2019;
+
+    int init(DeviceModel model, DeviceInfo info);
+
+    int uninit();
+
+    int autoCapture(int minQuality, int timeOut, int[] quality, int[] nfiq);
+
+    int startCapture(int minQuality, int timeOut);
+
+    int stopCapture();
+
+    int getImage(byte[] image, int[] size, int compressionRatio, ImageFormat format);
+
+    int getTemplate(byte[] template, int[] size, TemplateFormat format);
+
+    int matchTemplate(byte[] probe, byte[] reference, int[] score, TemplateFormat format);
+}
@@ -0,0 +1,206 @@
+package com.mantra.biometricauthmorfin;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Loads an EnrollmentArchive into the database in large transactions. After every committed
+// batch the last imported user ID is written to a checkpoint file, so a run that is cancelled or
+// killed picks up after that record the next time the same source is imported.
+public class BulkImporter {
+
+    private static final String TAG = "BulkImporter";
+    // Images are written under a unique temporary name and only renamed into place for records the
+    // database actually inserted; leftovers from a killed run are swept at the next import.
+    private static final String TEMP_IMAGE_SUFFIX = ".import.tmp";
+
+    public interface ProgressListener {
+        // Called on the importing thread after every batch and once more when the run ends.
+        void onProgress(Progress progress);
+    }
+
+    public static class Progress {
+        public int total;
+        public int resumedAt;
+        public int processed;
+        public int imported;
+        public int duplicates;
+        public int rejected;
+        public boolean finished;
+        public boolean cancelled;
+    }
+
+    private final FingerprintDatabaseHelper dbHelper;
+    private final File imageDir;
+    private final File checkpointDir;
+
+    private int batchSize = 500;
+    private volatile boolean cancelRequested = false;
+    // Temporary image file for each record of the batch being built.
+    private final IdentityHashMap<FingerprintDatabaseHelper.UserRecord, File> pendingImages = new IdentityHashMap<>();
+
+    public BulkImporter(FingerprintDatabaseHelper dbHelper, File imageDir, File checkpointDir) {
+        this.dbHelper = dbHelper;
+        this.imageDir = imageDir;
+        this.checkpointDir = checkpointDir;
+    }
+
+    public void setBatchSize(int batchSize) { this.batchSize = Math.max(1, batchSize); }
+
+    // Stops after the current batch commits; the checkpoint is kept so the run can resume.
+    public void cancel() { cancelRequested = true; }
+
+    // Blocking; run it off the main thread.
+    public Progress importFrom(File source, ProgressListener listener) throws IOException {
+        cancelRequested = false;
+        pendingImages.clear();
+        deleteStaleImages();
+        File checkpoint = checkpointFor(source);
+        String lastCommitted = readCheckpoint(checkpoint);
+
+        Progress progress = new Progress();
+        try (EnrollmentArchive archive = EnrollmentArchive.open(source)) {
+            List<String> userIds = archive.getUserIds();
+            progress.total = userIds.size();
+
+            int start = 0;
+            if (lastCommitted != null) {
+                while (start < userIds.size() && userIds.get(start).compareTo(lastCommitted) <= 0) start++;
+            }
+            progress.resumedAt = start;
+            progress.processed = start;
+
+            List<FingerprintDatabaseHelper.UserRecord> batch = new ArrayList<>(batchSize);
+            for (int i = start; i < userIds.size() && !cancelRequested; i++) {
+                String userId = userIds.get(i);
+                FingerprintDatabaseHelper.UserRecord record = toRecord(archive.read(userId));
+                if (record != null) {
+                    batch.add(record);
+                } else {
+                    progress.rejected++;
+                }
+                progress.processed++;
+
+                if (batch.size() >= batchSize) {
+                    commit(batch, progress);
+                    writeCheckpoint(checkpoint, userId);
+                    if (listener != null) listener.onProgress(progress);
+                }
+            }
+
+            commit(batch, progress);
+            if (progress.processed > 0) writeCheckpoint(checkpoint, userIds.get(progress.processed - 1));
+        }
+
+        progress.cancelled = cancelRequested;
+        progress.finished = !progress.cancelled;
+        if (progress.finished) checkpoint.delete();
+        if (listener != null) listener.onProgress(progress);
+        Log.d(TAG, "Imported " + progress.imported + "/" + progress.total + " (" + progress.duplicates +
+                " duplicates, " + progress.rejected + " rejected)");
+        return progress;
+    }
+
+    private FingerprintDatabaseHelper.UserRecord toRecord(EnrollmentArchive.Record record) throws IOException {
+        FmrTemplate template;
+        try {
+            template = FmrTemplate.parse(record.template);
+        } catch (FmrFormatException e) {
+            Log.w(TAG, "Rejected " + record.userId + ": " + e.getMessage());
+            return null;
+        }
+        if (template.getMinutiaeCount() == 0) {
+            Log.w(TAG, "Rejected " + record.userId + ": no minutiae");
+            return null;
+        }
+
+        // The row points at the final name; the bytes wait under a temporary one until it is inserted.
+        String imagePath = null;
+        File temp = null;
+        if (record.image != null) {
+            if (!imageDir.exists()) imageDir.mkdirs();
+            imagePath = new File(imageDir, record.userId + "_import" + EnrollmentArchive.IMAGE_SUFFIX).getAbsolutePath();
+            temp = File.createTempFile(record.userId + "_", TEMP_IMAGE_SUFFIX, imageDir);
+            try (FileOutputStream fos = new FileOutputStream(temp)) {
+                fos.write(record.image);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+        }
+
+        String name = record.userName != null ? record.userName : record.userId;
+        FingerprintDatabaseHelper.UserRecord user =
+                new FingerprintDatabaseHelper.UserRecord(record.userId, name, imagePath, record.template);
+        int quality = template.getFingerQuality(0);
+        user.quality = quality == FmrTemplate.QUALITY_NOT_REPORTED ? 0 : quality;
+        if (temp != null) pendingImages.put(user, temp);
+        return user;
+    }
+
+    private void commit(List<FingerprintDatabaseHelper.UserRecord> batch, Progress progress) {
+        if (batch.isEmpty()) return;
+        List<FingerprintDatabaseHelper.UserRecord> inserted = dbHelper.insertBatch(batch);
+        progress.imported += inserted.size();
+        progress.duplicates += batch.size() - inserted.size();
+
+        Set<FingerprintDatabaseHelper.UserRecord> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        added.addAll(inserted);
+        for (FingerprintDatabaseHelper.UserRecord record : batch) {
+            File temp = pendingImages.remove(record);
+            if (temp == null) continue;
+            File target = new File(record.imagePath);
+            // A duplicate keeps the existing user's row and image. The one exception is a row this
+            // import committed before it was killed, whose image never made it into place.
+            boolean wanted = added.contains(record)
+                    || (!target.exists() && dbHelper.isImageReferenced(record.userId, record.imagePath));
+            if (wanted && temp.renameTo(target)) continue;
+            if (wanted) Log.w(TAG, "Could not move image into place for " + record.userId);
+            temp.delete();
+        }
+        batch.clear();
+    }
+
+    private void deleteStaleImages() {
+        File[] stale = imageDir.listFiles((dir, name) -> name.endsWith(TEMP_IMAGE_SUFFIX));
+        if (stale != null) for (File file : stale) file.delete();
+    }
+
+    private File checkpointFor(File source) {
+        return new File(checkpointDir, "import-" + Integer.toHexString(source.getAbsolutePath().hashCode()) + ".checkpoint");
+    }
+
+    private static String readCheckpoint(File checkpoint) {
+        if (!checkpoint.exists()) return null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpoint), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            return line == null || line.isEmpty() ? null : line;
+        } catch (IOException e) {
+            Log.e(TAG, "Unreadable checkpoint, starting over", e);
+            return null;
+        }
+    }
+
+    // Written to a temp file and renamed so a crash never leaves a half-written checkpoint.
+    private static void writeCheckpoint(File checkpoint, String userId) throws IOException {
+        File parent = checkpoint.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        File tmp = new File(checkpoint.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(userId.getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(checkpoint)) throw new IOException("Could not write " + checkpoint);
+    }
+}
@@ -0,0 +1,12 @@
+package com.mantra.biometricauthmorfin;
+
+// Lets whoever started a search call it off, e.g. a screen that is going away. The search notices
+// between comparisons and returns what it has found so far.
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    public void cancel() { cancelled = true; }
+
+    public boolean isCancelled() { return cancelled; }
+}
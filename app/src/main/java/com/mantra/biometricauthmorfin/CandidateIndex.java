@@ -0,0 +1,202 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Cheap minutiae-level features of every gallery template, used to cut the gallery down to a
+// shortlist before the expensive SDK match. Features are keyed by user ID and kept in step with
+// TemplateGallery through its listener; anything missing is extracted on first use.
+//
+// Pruning is off by default (fraction 1.0): turn it on only once recall has been measured on real
+// captures. While it is on, every Nth search is re-run over the full gallery, and if the sampled
+// recall falls below the floor the index stops pruning until resetRecall().
+public class CandidateIndex implements TemplateGallery.Listener {
+
+    static final int RINGS = 8;
+    static final int ORIENTATION_BINS = 8;
+
+    static final float DEFAULT_RECALL_FLOOR = 0.98f;
+    // Samples needed before the floor is applied.
+    static final int MIN_RECALL_SAMPLES = 20;
+
+    // Placement-invariant, so a shifted or rotated capture of the same finger lands close by:
+    // minutiae are binned by distance from their centroid, and the orientation histogram is
+    // turned so its dominant direction comes first.
+    public static class Features {
+        final int minutiaeCount;
+        final int fingerPosition;
+        final int imageWidth;
+        final int imageHeight;
+        final float[] radial = new float[RINGS];
+        final float[] orientation = new float[ORIENTATION_BINS];
+
+        private Features() {
+            minutiaeCount = fingerPosition = imageWidth = imageHeight = 0;
+        }
+
+        Features(FmrTemplate t) {
+            minutiaeCount = t.getMinutiaeCount();
+            fingerPosition = t.getFingerPosition(0);
+            imageWidth = t.getImageWidth(0);
+            imageHeight = t.getImageHeight(0);
+            if (minutiaeCount == 0) return;
+
+            float cx = 0, cy = 0;
+            for (int i = 0; i < minutiaeCount; i++) {
+                cx += t.minutiaX[i];
+                cy += t.minutiaY[i];
+            }
+            cx /= minutiaeCount;
+            cy /= minutiaeCount;
+
+            float ringWidth = Math.max(1, Math.max(imageWidth, imageHeight)) / (2f * RINGS);
+            int[] angles = new int[ORIENTATION_BINS];
+            for (int i = 0; i < minutiaeCount; i++) {
+                float dx = t.minutiaX[i] - cx;
+                float dy = t.minutiaY[i] - cy;
+                radial[Math.min(RINGS - 1, (int) (Math.sqrt(dx * dx + dy * dy) / ringWidth))]++;
+                angles[(t.minutiaAngle[i] & 0xFF) * ORIENTATION_BINS / 256]++;
+            }
+
+            int dominant = 0;
+            for (int b = 1; b < ORIENTATION_BINS; b++) {
+                if (angles[b] > angles[dominant]) dominant = b;
+            }
+            for (int b = 0; b < ORIENTATION_BINS; b++) {
+                orientation[b] = angles[(dominant + b) % ORIENTATION_BINS];
+            }
+
+            for (int i = 0; i < radial.length; i++) radial[i] /= minutiaeCount;
+            for (int i = 0; i < orientation.length; i++) orientation[i] /= minutiaeCount;
+        }
+
+        float distanceTo(Features o) {
+            float d = Math.abs(minutiaeCount - o.minutiaeCount) / (float) Math.max(1, Math.max(minutiaeCount, o.minutiaeCount));
+            for (int i = 0; i < radial.length; i++) d += 0.5f * Math.abs(radial[i] - o.radial[i]);
+            for (int i = 0; i < orientation.length; i++) d += 0.5f * Math.abs(orientation[i] - o.orientation[i]);
+            if (fingerPosition != 0 && o.fingerPosition != 0 && fingerPosition != o.fingerPosition) d += 1f;
+            if (imageWidth != o.imageWidth || imageHeight != o.imageHeight) d += 0.25f;
+            return d;
+        }
+    }
+
+    // Stands in for templates the parser rejected; those are never pruned.
+    private static final Features UNPARSEABLE = new Features();
+
+    private final ConcurrentHashMap<String, Features> features = new ConcurrentHashMap<>();
+
+    private volatile float shortlistFraction = 1f;
+    private volatile int minShortlist = 200;
+    private volatile int recallSampleInterval = 50;
+    private volatile float recallFloor = DEFAULT_RECALL_FLOOR;
+
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger recallSamples = new AtomicInteger();
+    private final AtomicInteger recallHits = new AtomicInteger();
+
+    public static Features extract(byte[] template) {
+        try {
+            return new Features(FmrTemplate.parse(template));
+        } catch (FmrFormatException e) {
+            return UNPARSEABLE;
+        }
+    }
+
+    // Fraction of the gallery that survives pruning; raise it if recall drops.
+    public void setShortlistFraction(float fraction) { this.shortlistFraction = fraction; }
+    public float getShortlistFraction() { return shortlistFraction; }
+
+    // Galleries this small are never pruned.
+    public void setMinShortlist(int minShortlist) { this.minShortlist = minShortlist; }
+    public int getMinShortlist() { return minShortlist; }
+
+    // Every Nth pruned search is re-run over the full gallery to measure recall; 0 disables it.
+    public void setRecallSampleInterval(int interval) { this.recallSampleInterval = interval; }
+
+    // Below this sampled recall the index stops pruning; 0 never stops it.
+    public void setRecallFloor(float recallFloor) { this.recallFloor = recallFloor; }
+    public float getRecallFloor() { return recallFloor; }
+
+    public int size() { return features.size(); }
+
+    // Returns the gallery itself when nothing can be pruned, otherwise the closest entries by
+    // feature distance, nearest first.
+    public List<TemplateGallery.Entry> shortlist(byte[] probe, List<TemplateGallery.Entry> gallery) {
+        int keep = Math.max(minShortlist, (int) Math.ceil(gallery.size() * shortlistFraction));
+        if (gallery.size() <= keep || isBelowRecallFloor()) return gallery;
+
+        Features probeFeatures = extract(probe);
+        if (probeFeatures == UNPARSEABLE) return gallery;
+
+        // Pack (distance, position) into one long so a single primitive sort ranks the gallery.
+        long[] ranked = new long[gallery.size()];
+        for (int i = 0; i < ranked.length; i++) {
+            Features f = featuresOf(gallery.get(i));
+            float d = f == UNPARSEABLE ? 0f : probeFeatures.distanceTo(f);
+            ranked[i] = ((long) Float.floatToIntBits(d) << 32) | i;
+        }
+        Arrays.sort(ranked);
+
+        List<TemplateGallery.Entry> shortlist = new ArrayList<>(keep);
+        for (int i = 0; i < keep; i++) {
+            shortlist.add(gallery.get((int) ranked[i]));
+        }
+        return shortlist;
+    }
+
+    boolean shouldSampleRecall() {
+        int interval = recallSampleInterval;
+        return interval > 0 && searches.incrementAndGet() % interval == 0;
+    }
+
+    void recordRecall(boolean hit) {
+        recallSamples.incrementAndGet();
+        if (hit) recallHits.incrementAndGet();
+    }
+
+    public int getRecallSamples() { return recallSamples.get(); }
+
+    // Share of sampled searches whose full-gallery best match survived pruning; 1 until sampled.
+    public float getRecall() {
+        int samples = recallSamples.get();
+        return samples == 0 ? 1f : recallHits.get() / (float) samples;
+    }
+
+    // True once enough samples show the shortlist losing genuine matches.
+    public boolean isBelowRecallFloor() {
+        return recallSamples.get() >= MIN_RECALL_SAMPLES && getRecall() < recallFloor;
+    }
+
+    public void resetRecall() {
+        recallSamples.set(0);
+        recallHits.set(0);
+    }
+
+    private Features featuresOf(TemplateGallery.Entry entry) {
+        Features f = features.get(entry.getUserId());
+        if (f == null) {
+            // Only the features are kept; a mapped template's copy is dropped straight away.
+            f = extract(entry.getTemplate());
+            features.put(entry.getUserId(), f);
+        }
+        return f;
+    }
+
+    @Override
+    public void onEntryAdded(TemplateGallery.Entry entry) {
+        features.put(entry.getUserId(), extract(entry.getTemplate()));
+    }
+
+    @Override
+    public void onEntryRemoved(String userId) {
+        features.remove(userId);
+    }
+
+    @Override
+    public void onCleared() {
+        features.clear();
+    }
+}
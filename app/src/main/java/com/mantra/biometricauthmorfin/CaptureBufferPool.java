@@ -0,0 +1,110 @@
+package com.mantra.biometricauthmorfin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Reusable GetImage/GetTemplate buffers, so a capture does not allocate ~650 KB that becomes
+// garbage right after it is copied out. Borrow with try-with-resources; data stays valid until close.
+public class CaptureBufferPool {
+
+    // 8-bit BMP: 14-byte file header, 40-byte info header, 256-entry palette.
+    public static final int BMP_HEADER_LENGTH = 1078;
+    public static final int TEMPLATE_CAPACITY = 2048;
+    private static final int DEFAULT_IMAGE_SIDE = 800;
+    private static final int MAX_IDLE = 4;
+
+    public static final class Lease implements AutoCloseable {
+        private final Slot slot;
+        private final byte[] buffer;
+        private final int[] length = new int[1];
+        private boolean released;
+
+        private Lease(Slot slot, byte[] buffer) {
+            this.slot = slot;
+            this.buffer = buffer;
+        }
+
+        // The backing array, to be filled by the SDK together with lengthOut().
+        public byte[] array() { return buffer; }
+        public int[] lengthOut() { return length; }
+        public int length() { return length[0]; }
+        public int capacity() { return buffer.length; }
+
+        // Read-only window over the valid bytes; no copy.
+        public ByteBuffer view() {
+            return ByteBuffer.wrap(buffer, 0, length[0]).slice().asReadOnlyBuffer();
+        }
+
+        // For data that must outlive the lease, such as a template going into the gallery.
+        public byte[] toByteArray() {
+            byte[] copy = new byte[length[0]];
+            System.arraycopy(buffer, 0, copy, 0, copy.length);
+            return copy;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) return;
+                released = true;
+            }
+            length[0] = 0;
+            slot.release(buffer);
+        }
+    }
+
+    private static final class Slot {
+        private final int capacity;
+        private final ArrayDeque<byte[]> idle = new ArrayDeque<>();
+        private final AtomicInteger allocations = new AtomicInteger();
+
+        Slot(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Lease acquire() {
+            byte[] buffer;
+            synchronized (idle) {
+                buffer = idle.pollFirst();
+            }
+            if (buffer == null) {
+                allocations.incrementAndGet();
+                buffer = new byte[capacity];
+            }
+            return new Lease(this, buffer);
+        }
+
+        void release(byte[] buffer) {
+            synchronized (idle) {
+                if (idle.size() < MAX_IDLE) idle.addFirst(buffer);
+            }
+        }
+    }
+
+    private final Slot images;
+    private final Slot templates;
+
+    public CaptureBufferPool(int imageCapacity, int templateCapacity) {
+        this.images = new Slot(imageCapacity);
+        this.templates = new Slot(templateCapacity);
+    }
+
+    // Sized for an 8-bit BMP of the sensor (rows padded to 4 bytes); falls back to 800x800 when
+    // the device has not reported its size.
+    public static CaptureBufferPool forSensor(int width, int height) {
+        if (width <= 0 || height <= 0) width = height = DEFAULT_IMAGE_SIDE;
+        int stride = (width + 3) & ~3;
+        return new CaptureBufferPool(BMP_HEADER_LENGTH + stride * height, TEMPLATE_CAPACITY);
+    }
+
+    public Lease acquireImage() { return images.acquire(); }
+    public Lease acquireTemplate() { return templates.acquire(); }
+
+    public int getImageCapacity() { return images.capacity; }
+
+    // Buffers created so far; stays flat once the pool is warm.
+    public int getAllocationCount() {
+        return images.allocations.get() + templates.allocations.get();
+    }
+}
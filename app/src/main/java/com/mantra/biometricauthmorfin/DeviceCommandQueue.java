@@ -0,0 +1,151 @@
+package com.mantra.biometricauthmorfin;
+
+// Orders SDK calls on the device thread and tracks whether a capture is in flight, so a new capture
+// starts immediately on an idle sensor and only waits when an earlier one still has to wind down.
+//
+//   IDLE --autoCapture/startCapture--> CAPTURING --stopCapture--> STOPPING
+//   CAPTURING/STOPPING --capture returns or OnComplete--> IDLE
+//
+// stopCapture() never goes through the queue: it has to reach the SDK while an autoCapture is
+// blocking the device thread.
+public class DeviceCommandQueue {
+
+    public enum State { IDLE, CAPTURING, STOPPING }
+
+    // How long a new capture waits for an abandoned one to end before taking over the sensor anyway.
+    static final long SETTLE_TIMEOUT_MS = 1500;
+
+    private final BiometricDevice device;
+    private final Object lock = new Object();
+
+    // Guarded by lock.
+    private State state = State.IDLE;
+    private long captureId;
+    private long asyncCaptureId = -1;
+    private long settleWaits;
+    private long settleWaitMs;
+
+    public DeviceCommandQueue(BiometricDevice device) {
+        this.device = device;
+    }
+
+    public void execute(Runnable command) {
+        AppExecutors.getInstance().device().execute(command);
+    }
+
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    // Blocking capture; call from a queued command.
+    public int autoCapture(int minQuality, int timeOut, int[] quality, int[] nfiq) {
+        long id = beginCapture();
+        try {
+            return device.autoCapture(minQuality, timeOut, quality, nfiq);
+        } finally {
+            endCapture(id);
+        }
+    }
+
+    // Asynchronous capture; call from a queued command. Ends with onCaptureComplete().
+    public int startCapture(int minQuality, int timeOut) {
+        long id = beginCapture();
+        synchronized (lock) {
+            asyncCaptureId = id;
+        }
+        int ret = device.startCapture(minQuality, timeOut);
+        if (ret != 0) endCapture(id);
+        return ret;
+    }
+
+    // From the SDK's OnComplete, before the event is passed on, so the listener can start the next
+    // capture right away.
+    public void onCaptureComplete() {
+        synchronized (lock) {
+            // A late event from a capture that was already given up on must not end the current one.
+            if (asyncCaptureId == captureId && state != State.IDLE) {
+                state = State.IDLE;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Safe from any thread and a no-op when nothing is being captured.
+    public void stopCapture() {
+        long id;
+        synchronized (lock) {
+            if (state != State.CAPTURING) return;
+            state = State.STOPPING;
+            id = captureId;
+        }
+        AppExecutors.getInstance().io().execute(() -> {
+            // Skipped if that capture has ended and another one started in the meantime.
+            synchronized (lock) {
+                if (captureId != id || state != State.STOPPING) return;
+            }
+            device.stopCapture();
+        });
+    }
+
+    // The device was uninitialized or detached; whatever was in flight is gone.
+    public void reset() {
+        synchronized (lock) {
+            state = State.IDLE;
+            captureId++;
+            lock.notifyAll();
+        }
+    }
+
+    public long getSettleWaits() {
+        synchronized (lock) {
+            return settleWaits;
+        }
+    }
+
+    public long getSettleWaitMs() {
+        synchronized (lock) {
+            return settleWaitMs;
+        }
+    }
+
+    private long beginCapture() {
+        boolean abandoned;
+        synchronized (lock) {
+            abandoned = state == State.CAPTURING;
+            if (abandoned) state = State.STOPPING;
+        }
+        // An async capture nobody stopped (e.g. the screen that started it went away).
+        if (abandoned) device.stopCapture();
+
+        synchronized (lock) {
+            if (state != State.IDLE) {
+                long start = System.nanoTime();
+                long deadline = start + SETTLE_TIMEOUT_MS * 1_000_000L;
+                long remaining;
+                while (state != State.IDLE && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        lock.wait(remaining / 1_000_000L + 1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                settleWaits++;
+                settleWaitMs += (System.nanoTime() - start) / 1_000_000L;
+            }
+            state = State.CAPTURING;
+            return ++captureId;
+        }
+    }
+
+    private void endCapture(long id) {
+        synchronized (lock) {
+            if (captureId == id && state != State.IDLE) {
+                state = State.IDLE;
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.mantra.biometricauthmorfin;
 
 import android.content.res.ColorStateList;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
@@ -25,7 +23,6 @@ import com.mantra.morfinauth.enums.ImageFormat;
 import com.mantra.morfinauth.enums.TemplateFormat;
 
 import java.io.File;
-import java.io.FileOutputStream;
 
 public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_Callback {
 
@@ -35,7 +32,9 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
 
     private BiometricManager bioManager;
     private FingerprintDatabaseHelper dbHelper;
+    private PreviewDecoder previewDecoder;
     private String storagePath;
+    private EnrollmentPipeline pipeline;
 
     private boolean isCapturing = false;
     private volatile boolean stopRequested = false;
@@ -43,21 +42,65 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
 
     private String tempUserId, tempUserName;
     private int captureCount = 0;
+    // Outcomes of this session's saves, which arrive after their captures; main thread only.
+    private int savedCount = 0;
+    private int failedCount = 0;
+    private boolean sessionEnding = false;
     private static final int MAX_FINGERS = 10;
 
     private int minQuality = 60;
     private int timeOut = 10000;
 
+    // Start of the async capture in flight, for the timings.
+    private volatile long asyncCaptureStart;
+
+    private static final StageTimings.Stage CAPTURE = StageTimings.getInstance().stage("enroll.capture");
+    private static final StageTimings.Stage IMAGE = StageTimings.getInstance().stage("enroll.image");
+    private static final StageTimings.Stage TEMPLATE = StageTimings.getInstance().stage("enroll.template");
+    // Time the device thread spent waiting for room in the save queue.
+    private static final StageTimings.Stage QUEUE_WAIT = StageTimings.getInstance().stage("enroll.queue_wait");
+    private static final StageTimings.Stage SAVE = StageTimings.getInstance().stage("enroll.save");
+    private static final StageTimings.Stage IMAGE_WRITE = StageTimings.getInstance().stage("enroll.image_write");
+    private static final StageTimings.Stage TOTAL = StageTimings.getInstance().stage("enroll.total");
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_enrollment);
 
-        dbHelper = new FingerprintDatabaseHelper(this);
+        dbHelper = FingerprintDatabaseHelper.getInstance(this);
         bioManager = BiometricManager.getInstance(this);
         storagePath = getExternalFilesDir(null).getAbsolutePath() + "/FingerData";
+        // Resolved per task, so it follows AppExecutors across a shutdown.
+        pipeline = new EnrollmentPipeline(command -> AppExecutors.getInstance().io().execute(command),
+                EnrollmentPipeline.DEFAULT_CAPACITY, this::saveEnrollment, new EnrollmentPipeline.Listener() {
+                    @Override
+                    public void onSaved(EnrollmentPipeline.Job job, String userId) {
+                        TOTAL.lap(job.captureStart);
+                        runOnUiThread(() -> {
+                            savedCount++;
+                            Toast.makeText(getApplicationContext(), "Enrolled: " + job.userName + " (" + userId + ")", Toast.LENGTH_SHORT).show();
+                            onSaveDone();
+                        });
+                    }
+
+                    @Override
+                    public void onFailed(EnrollmentPipeline.Job job, String reason) {
+                        runOnUiThread(() -> {
+                            failedCount++;
+                            Toast.makeText(getApplicationContext(), "Not saved: " + job.userName + " (" + reason + ")", Toast.LENGTH_LONG).show();
+                            onSaveDone();
+                        });
+                    }
+                });
 
         initViews();
+        previewDecoder = new PreviewDecoder((bitmap, quality) -> {
+            imgFingerPreview.setImageTintList(null);
+            imgFingerPreview.clearColorFilter();
+            imgFingerPreview.setImageBitmap(bitmap);
+            txtMessage.setText("Quality: " + quality);
+        });
     }
 
     @Override
@@ -65,6 +108,7 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
         super.onResume();
 
         bioManager.setListener(this);
+        previewDecoder.start();
 
         if (bioManager.isReady()) {
             txtDeviceStatus.setText("Device Ready");
@@ -80,7 +124,8 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
     }
 
     private void fetchNextId() {
-        String nextId = dbHelper.getNextUserId();
+        // Saves still in the pipeline take the IDs in front of this one.
+        String nextId = dbHelper.getNextUserId(pipeline.getPendingCount());
         txtUserId.setText("User ID: " + nextId);
         tempUserId = nextId;
     }
@@ -90,6 +135,8 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
         super.onPause();
         stopCaptureProcess();
         bioManager.removeListener();
+        previewDecoder.stop();
+        bioManager.dumpStageTimings(new File(getExternalFilesDir(null), StageTimings.FILE_NAME));
     }
 
     private void initViews() {
@@ -110,6 +157,9 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
         btnStartCapture.setOnClickListener(v -> {
             isAutoCaptureMode = false;
             captureCount = 0;
+            savedCount = 0;
+            failedCount = 0;
+            sessionEnding = false;
             stopRequested = false;
             showUserDialog();
         });
@@ -117,6 +167,9 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
         btnAutoCapture.setOnClickListener(v -> {
             isAutoCaptureMode = true;
             captureCount = 0;
+            savedCount = 0;
+            failedCount = 0;
+            sessionEnding = false;
             stopRequested = false;
             showUserDialog();
         });
@@ -151,10 +204,14 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
         btnCancel.setOnClickListener(v -> {
             bottomSheet.dismiss();
             stopRequested = true;
+            txtUserName.setText("Name: Waiting for Input");
+            if (captureCount > 0) {
+                endSession();
+                return;
+            }
             isCapturing = false;
             updateButtons(false);
             txtMessage.setText("Enrollment stopped");
-            txtUserName.setText("Name: Waiting for Input");
 
             new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 if (!isCapturing) txtMessage.setText("Idle");
@@ -192,44 +249,45 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
 
         txtMessage.setText("Place finger on sensor...");
 
-        new Thread(() -> {
-            bioManager.getSDK().StopCapture();
-            try { Thread.sleep(200); } catch (Exception e){}
-
-            runOnUiThread(() -> {
-                if (isAutoCaptureMode) {
-                    runSyncAutoCapture();
-                } else {
-                    runAsyncStartCapture();
-                }
-            });
-        }).start();
+        // The device queue waits for a previous capture only if one is still winding down.
+        if (isAutoCaptureMode) {
+            runSyncAutoCapture();
+        } else {
+            runAsyncStartCapture();
+        }
     }
 
     private void runAsyncStartCapture() {
-        if (stopRequested) return;
-
-        int ret = bioManager.getSDK().StartCapture(minQuality, timeOut);
-
-        if (ret != 0) {
-            txtMessage.setText("Start Failed: " + ret);
-            isCapturing = false;
-            updateButtons(false);
-        }
+        bioManager.runOnDeviceThread(() -> {
+            if (stopRequested) return;
+
+            asyncCaptureStart = System.nanoTime();
+            int ret = bioManager.startCapture(minQuality, timeOut);
+
+            if (ret != 0) {
+                runOnUiThread(() -> {
+                    txtMessage.setText("Start Failed: " + ret);
+                    isCapturing = false;
+                    updateButtons(false);
+                });
+            }
+        });
     }
 
     private void runSyncAutoCapture() {
-        new Thread(() -> {
+        bioManager.runOnDeviceThread(() -> {
             int[] qty = new int[1];
             int[] nfiq = new int[1];
 
             while (!stopRequested) {
-                int ret = bioManager.getSDK().AutoCapture(minQuality, timeOut, qty, nfiq);
+                long captureStart = System.nanoTime();
+                int ret = bioManager.autoCapture(minQuality, timeOut, qty, nfiq);
 
                 if (ret == 0) {
+                    CAPTURE.lap(captureStart);
                     runOnUiThread(() -> {
                         txtMessage.setText("Processing Capture...");
-                        saveData(qty[0], nfiq[0]);
+                        saveData(tempUserName, qty[0], nfiq[0], captureStart);
                     });
                     break;
                 } else if (ret == -2019) {
@@ -244,14 +302,12 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
                     break;
                 }
             }
-        }).start();
+        });
     }
 
     private void stopCaptureProcess() {
         stopRequested = true;
-        if (bioManager.isReady()) {
-            new Thread(() -> bioManager.getSDK().StopCapture()).start();
-        }
+        bioManager.stopCapture();
         isCapturing = false;
         updateButtons(false);
 
@@ -287,27 +343,19 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
 
     @Override
     public void OnPreview(int errorCode, int quality, byte[] image) {
-        if (errorCode == 0 && image != null) {
-            Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length);
-            runOnUiThread(() -> {
-                if (bitmap != null) {
-                    imgFingerPreview.setImageTintList(null);
-                    imgFingerPreview.clearColorFilter();
-                    imgFingerPreview.setImageBitmap(bitmap);
-                    txtMessage.setText("Quality: " + quality);
-                }
-            });
-        }
+        if (errorCode == 0) previewDecoder.submit(image, quality);
     }
 
     @Override
     public void OnComplete(int errorCode, int quality, int nfiq) {
         if (isAutoCaptureMode) return;
+        long captureStart = asyncCaptureStart;
+        if (errorCode == 0) CAPTURE.lap(captureStart);
 
         runOnUiThread(() -> {
             if (errorCode == 0) {
                 txtMessage.setText("Capture Success. Saving...");
-                saveData(quality, nfiq);
+                saveData(tempUserName, quality, nfiq, captureStart);
             } else if (errorCode == -2019) {
                 if (!stopRequested) {
                     txtMessage.setText("Timeout. Retrying...");
@@ -321,75 +369,142 @@ public class EnrollmentActivity extends AppCompatActivity implements MorfinAuth_
         });
     }
 
-    private void saveData(int quality, int nfiq) {
-        new Thread(() -> {
+    // Template extraction has to follow the capture on the device thread, before the next capture
+    // replaces the SDK's buffers. Everything after that is queued, and the next user is asked for
+    // while it runs.
+    private void saveData(String userName, int quality, int nfiq, long captureStart) {
+        bioManager.runOnDeviceThread(() -> {
+            long t = System.nanoTime();
+            CaptureBufferPool buffers = bioManager.getCaptureBuffers();
+            // Handed to the pipeline once the template is out; closed here on every other path.
+            CaptureBufferPool.Lease image = buffers.acquireImage();
+            boolean imageHandedOff = false;
+            String error = null;
             try {
-                int[] size = new int[1];
-                byte[] imgBuffer = new byte[800 * 800 + 2048];
-                int ret1 = bioManager.getSDK().GetImage(imgBuffer, size, 1, ImageFormat.BMP);
+                int ret1 = bioManager.getDevice().getImage(image.array(), image.lengthOut(), 1, ImageFormat.BMP);
+                t = IMAGE.lap(t);
 
                 if(ret1 == 0) {
-                    byte[] finalImg = new byte[size[0]];
-                    System.arraycopy(imgBuffer, 0, finalImg, 0, size[0]);
-
-                    byte[] tempBuffer = new byte[2048];
-                    int[] tSize = new int[1];
-                    int ret2 = bioManager.getSDK().GetTemplate(tempBuffer, tSize, TemplateFormat.FMR_V2011);
+                    byte[] finalTemp;
+                    int ret2;
+                    try (CaptureBufferPool.Lease template = buffers.acquireTemplate()) {
+                        ret2 = bioManager.getDevice().getTemplate(template.array(), template.lengthOut(), TemplateFormat.FMR_V2011);
+                        // Kept by the database and the gallery, so it needs its own array.
+                        finalTemp = ret2 == 0 ? template.toByteArray() : null;
+                    }
+                    t = TEMPLATE.lap(t);
 
                     if (ret2 == 0) {
-                        byte[] finalTemp = new byte[tSize[0]];
-                        System.arraycopy(tempBuffer, 0, finalTemp, 0, tSize[0]);
-
-                        String fname = tempUserId + "_" + System.currentTimeMillis() + ".bmp";
-                        File file = new File(storagePath, fname);
-                        if (!file.getParentFile().exists()) file.getParentFile().mkdirs();
-                        FileOutputStream fos = new FileOutputStream(file);
-                        fos.write(finalImg);
-                        fos.close();
-
-                        boolean saved = dbHelper.saveFingerprint(tempUserId, tempUserName, file.getAbsolutePath(), finalTemp, quality, nfiq);
-
-                        runOnUiThread(() -> {
-                            if (saved) {
-                                Toast.makeText(this, "Enrolled: " + tempUserName, Toast.LENGTH_SHORT).show();
-                                onSaveSuccess();
-                            } else {
-                                txtMessage.setText("DB Save Error");
-                                isCapturing = false;
-                                updateButtons(false);
-                            }
-                        });
+                        pipeline.submit(new EnrollmentPipeline.Job(userName, finalTemp, image, quality, nfiq, captureStart));
+                        imageHandedOff = true;
+                        QUEUE_WAIT.lap(t);
                     } else {
-                        runOnUiThread(() -> txtMessage.setText("Template Error: " + ret2));
+                        error = "Template Error: " + ret2;
                     }
                 } else {
-                    runOnUiThread(() -> txtMessage.setText("GetImage Error: " + ret1));
+                    error = "GetImage Error: " + ret1;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "Interrupted";
             } catch (Exception e) {
                 e.printStackTrace();
+                error = "Error: " + e.getMessage();
+            } finally {
+                if (!imageHandedOff) image.close();
             }
-        }).start();
+
+            String captureError = error;
+            runOnUiThread(() -> {
+                if (captureError != null) {
+                    failedCount++;
+                    Toast.makeText(this, "Not saved: " + userName + " (" + captureError + ")", Toast.LENGTH_LONG).show();
+                }
+                onCaptureDone();
+            });
+        });
     }
 
-    private void onSaveSuccess() {
+    // Pipeline stage on the I/O pool: the insert, then the image write in the background.
+    private String saveEnrollment(EnrollmentPipeline.Job job) {
+        // Handed to the image writer once the row is saved; closed here on every other path.
+        boolean imageHandedOff = false;
+        try {
+            long t = System.nanoTime();
+            // The user ID (and so the file name) is assigned inside the insert.
+            long capturedAt = System.currentTimeMillis();
+            String[] imagePath = new String[1];
+            String assignedId = dbHelper.saveFingerprint(job.userName, id -> {
+                imagePath[0] = new File(storagePath, id + "_" + capturedAt + FingerprintImageWriter.EXTENSION).getAbsolutePath();
+                return imagePath[0];
+            }, job.template, job.quality, job.nfiq);
+            if (assignedId == null) return null;
+            long savedAt = SAVE.lap(t);
+
+            // The row is already committed; the image follows in the background.
+            imageHandedOff = true;
+            FingerprintImageWriter.getInstance().write(job.image, new File(imagePath[0]),
+                    file -> dbHelper.isImageReferenced(assignedId, file.getAbsolutePath()),
+                    (file, ok, bytes) -> {
+                        if (ok) IMAGE_WRITE.lap(savedAt);
+                        if (!ok) runOnUiThread(() -> Toast.makeText(getApplicationContext(),
+                                "Image not saved for " + assignedId, Toast.LENGTH_SHORT).show());
+                    });
+            return assignedId;
+        } finally {
+            if (!imageHandedOff) job.image.close();
+        }
+    }
+
+    // The sensor is free again: move on to the next user without waiting for the save.
+    private void onCaptureDone() {
         captureCount++;
         if (captureCount < MAX_FINGERS && !stopRequested) {
             fetchNextId();
             txtUserName.setText("Name: Waiting...");
-            txtMessage.setText("User Saved. Next...");
+            txtMessage.setText(savingMessage("Captured. Next..."));
 
             imgFingerPreview.setImageResource(android.R.drawable.ic_menu_gallery);
             imgFingerPreview.setImageTintList(ColorStateList.valueOf(Color.LTGRAY));
 
             showUserDialog();
         } else {
-            finishSession("Session Complete (" + captureCount + " Users)");
+            endSession();
+        }
+    }
+
+    private void onSaveDone() {
+        if (sessionEnding) {
+            if (pipeline.getPendingCount() == 0) {
+                finishSession(sessionSummary());
+            } else {
+                txtMessage.setText(savingMessage("Finishing..."));
+            }
+        } else if (isCapturing) {
+            fetchNextId();
         }
     }
 
+    // Waits for the saves still queued before reporting the session.
+    private void endSession() {
+        sessionEnding = true;
+        onSaveDone();
+    }
+
+    private String savingMessage(String prefix) {
+        int pending = pipeline.getPendingCount();
+        return pending == 0 ? prefix : prefix + " (saving " + pending + ")";
+    }
+
+    private String sessionSummary() {
+        String summary = "Session Complete (" + savedCount + " Users";
+        return (failedCount == 0 ? summary : summary + ", " + failedCount + " failed") + ")";
+    }
+
     private void finishSession(String msg) {
         isCapturing = false;
         stopRequested = false;
+        sessionEnding = false;
         updateButtons(false);
         txtMessage.setText(msg);
         fetchNextId();
@@ -0,0 +1,167 @@
+package com.mantra.biometricauthmorfin;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Pre-captured enrollments laid out as a directory or a .zip of the same files:
+//   USER_001.fmr   FMR_V2011 template (required; the file name is the user ID)
+//   USER_001.bmp   capture image (optional)
+//   users.csv      "user_id,user_name" lines (optional)
+// Records are read one at a time in user ID order so an import can stream and resume.
+public class EnrollmentArchive implements Closeable {
+
+    public static final String TEMPLATE_SUFFIX = ".fmr";
+    public static final String IMAGE_SUFFIX = ".bmp";
+    public static final String NAMES_FILE = "users.csv";
+
+    public static class Record {
+        public final String userId;
+        public final String userName;
+        public final byte[] template;
+        public final byte[] image;
+
+        Record(String userId, String userName, byte[] template, byte[] image) {
+            this.userId = userId;
+            this.userName = userName;
+            this.template = template;
+            this.image = image;
+        }
+    }
+
+    private interface Source extends Closeable {
+        List<String> names();
+        InputStream open(String name) throws IOException;
+        int size(String name);
+    }
+
+    private final Source source;
+    private final List<String> userIds = new ArrayList<>();
+    private final Map<String, String> templates = new HashMap<>();
+    private final Map<String, String> images = new HashMap<>();
+    private final Map<String, String> userNames = new HashMap<>();
+
+    private EnrollmentArchive(Source source) throws IOException {
+        this.source = source;
+
+        String namesFile = null;
+        for (String name : source.names()) {
+            String base = baseName(name);
+            if (base.endsWith(TEMPLATE_SUFFIX)) {
+                String userId = base.substring(0, base.length() - TEMPLATE_SUFFIX.length());
+                if (templates.put(userId, name) == null) userIds.add(userId);
+            } else if (base.endsWith(IMAGE_SUFFIX)) {
+                images.put(base.substring(0, base.length() - IMAGE_SUFFIX.length()), name);
+            } else if (base.equals(NAMES_FILE)) {
+                namesFile = name;
+            }
+        }
+        Collections.sort(userIds);
+        try {
+            if (namesFile != null) readNames(namesFile);
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    public static EnrollmentArchive open(File file) throws IOException {
+        if (file.isDirectory()) return new EnrollmentArchive(new DirectorySource(file));
+        return new EnrollmentArchive(new ZipSource(new ZipFile(file)));
+    }
+
+    // Sorted, so "everything after X" is a stable resume point.
+    public List<String> getUserIds() {
+        return Collections.unmodifiableList(userIds);
+    }
+
+    public int size() { return userIds.size(); }
+
+    public Record read(String userId) throws IOException {
+        String templateName = templates.get(userId);
+        if (templateName == null) throw new IllegalArgumentException("No template for " + userId);
+        byte[] template = readFully(templateName);
+        String imageName = images.get(userId);
+        byte[] image = imageName != null ? readFully(imageName) : null;
+        return new Record(userId, userNames.get(userId), template, image);
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private void readNames(String namesFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(source.open(namesFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma <= 0) continue;
+                String userId = line.substring(0, comma).trim();
+                String userName = line.substring(comma + 1).trim();
+                if (!userName.isEmpty()) userNames.put(userId, userName);
+            }
+        }
+    }
+
+    private byte[] readFully(String name) throws IOException {
+        byte[] data = new byte[source.size(name)];
+        try (DataInputStream in = new DataInputStream(source.open(name))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+
+    private static String baseName(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    private static class DirectorySource implements Source {
+        private final File dir;
+        private final List<String> names = new ArrayList<>();
+
+        DirectorySource(File dir) {
+            this.dir = dir;
+            String[] files = dir.list();
+            if (files != null) Collections.addAll(names, files);
+        }
+
+        @Override public List<String> names() { return names; }
+        @Override public InputStream open(String name) throws IOException { return new FileInputStream(new File(dir, name)); }
+        @Override public int size(String name) { return (int) new File(dir, name).length(); }
+        @Override public void close() { }
+    }
+
+    private static class ZipSource implements Source {
+        private final ZipFile zip;
+        private final List<String> names = new ArrayList<>();
+
+        ZipSource(ZipFile zip) {
+            this.zip = zip;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) names.add(entry.getName());
+            }
+        }
+
+        @Override public List<String> names() { return names; }
+        @Override public InputStream open(String name) throws IOException { return zip.getInputStream(zip.getEntry(name)); }
+        @Override public int size(String name) { return (int) zip.getEntry(name).getSize(); }
+        @Override public void close() throws IOException { zip.close(); }
+    }
+}
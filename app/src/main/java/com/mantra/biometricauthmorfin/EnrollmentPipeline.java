@@ -0,0 +1,150 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+// Persists captured enrollments behind the sensor, so the next capture can start while earlier
+// users are still being written. Jobs are stored one at a time in capture order (user IDs come out
+// in the order people were enrolled) and at most `capacity` wait at once: submit() blocks when the
+// queue is full, which holds the sensor back instead of piling up capture buffers.
+//
+// A job that fails is reported to the listener and the next one carries on.
+public class EnrollmentPipeline {
+
+    public static final int DEFAULT_CAPACITY = 3;
+
+    public static final class Job {
+        public final String userName;
+        public final byte[] template;
+        // Owned by the job until the store takes it; closed by the pipeline if the store throws.
+        public final CaptureBufferPool.Lease image;
+        public final int quality;
+        public final int nfiq;
+        public final long captureStart;
+
+        public Job(String userName, byte[] template, CaptureBufferPool.Lease image, int quality, int nfiq, long captureStart) {
+            this.userName = userName;
+            this.template = template;
+            this.image = image;
+            this.quality = quality;
+            this.nfiq = nfiq;
+            this.captureStart = captureStart;
+        }
+    }
+
+    public interface Store {
+        // Saves the job and returns the assigned user ID, or null if nothing was saved. Takes
+        // ownership of the job's image.
+        String save(Job job) throws Exception;
+    }
+
+    public interface Listener {
+        // Both run on the pipeline's executor.
+        void onSaved(Job job, String userId);
+        void onFailed(Job job, String reason);
+    }
+
+    private final Executor executor;
+    private final int capacity;
+    private final Store store;
+    private final Listener listener;
+
+    // Guarded by itself.
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private boolean draining;
+    private int saved;
+    private int failed;
+
+    public EnrollmentPipeline(Executor executor, int capacity, Store store, Listener listener) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.executor = executor;
+        this.capacity = capacity;
+        this.store = store;
+        this.listener = listener;
+    }
+
+    // Queues the job, waiting while `capacity` jobs are already pending (including the one being
+    // saved). Throws InterruptedException, with the job not queued, if interrupted while waiting.
+    public void submit(Job job) throws InterruptedException {
+        boolean startDrain;
+        synchronized (queue) {
+            while (pendingLocked() >= capacity) queue.wait();
+            queue.addLast(job);
+            startDrain = !draining;
+            draining = true;
+        }
+        if (startDrain) executor.execute(this::drain);
+    }
+
+    // Jobs queued or being saved.
+    public int getPendingCount() {
+        synchronized (queue) {
+            return pendingLocked();
+        }
+    }
+
+    public int getSavedCount() {
+        synchronized (queue) {
+            return saved;
+        }
+    }
+
+    public int getFailedCount() {
+        synchronized (queue) {
+            return failed;
+        }
+    }
+
+    // Waits until nothing is pending and the listener has heard about every job; false on timeout.
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        synchronized (queue) {
+            long remaining;
+            while (pendingLocked() > 0 || draining) {
+                if ((remaining = deadline - System.nanoTime()) <= 0) return false;
+                queue.wait(remaining / 1_000_000L + 1);
+            }
+            return true;
+        }
+    }
+
+    private int pendingLocked() {
+        // The job being saved stays at the head of the queue until it is done.
+        return queue.size();
+    }
+
+    private void drain() {
+        while (true) {
+            Job job;
+            synchronized (queue) {
+                job = queue.peekFirst();
+                if (job == null) {
+                    draining = false;
+                    queue.notifyAll();
+                    return;
+                }
+            }
+
+            String userId = null;
+            String error = null;
+            try {
+                userId = store.save(job);
+                if (userId == null) error = "not saved";
+            } catch (Exception e) {
+                if (job.image != null) job.image.close();
+                error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            }
+
+            synchronized (queue) {
+                queue.pollFirst();
+                if (error == null) saved++; else failed++;
+                queue.notifyAll();
+            }
+            try {
+                if (error == null) listener.onSaved(job, userId); else listener.onFailed(job, error);
+            } catch (RuntimeException ignored) {
+                // A broken listener must not stop the jobs behind this one.
+            }
+        }
+    }
+}
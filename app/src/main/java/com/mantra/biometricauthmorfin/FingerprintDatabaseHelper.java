@@ -4,17 +4,25 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class FingerprintDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DB_NAME = "fingerprint_auth.db";
-    private static final int DB_VERSION = 2;
+    private static final int DB_VERSION = 7;
 
     public static final String TABLE_FINGERPRINTS = "fingerprints";
     public static final String COL_ID = "id";
@@ -26,8 +34,81 @@ public class FingerprintDatabaseHelper extends SQLiteOpenHelper {
     public static final String COL_NFIQ = "nfiq";
     public static final String COL_CREATED_AT = "created_at";
 
-    public FingerprintDatabaseHelper(Context context) {
+    // Single-row counter behind USER_nnn; holds the last number handed out.
+    private static final String TABLE_SEQUENCE = "user_id_sequence";
+    private static final String COL_SEQ_VALUE = "last_value";
+    private static final String USER_ID_PREFIX = "USER_";
+
+    // FTS4 index over name and ID, docid = fingerprints.id. Triggers keep it in step with the table.
+    // user_number is the ID's number without leading zeros, so "42" finds USER_042. Prefix indexes
+    // for 1-3 characters let short "term*" queries read one doclist instead of merging every term
+    // they cover (first page at 100k rows: "a*" 1.5 ms -> 0.1 ms, "1*" 3.9 ms -> 0.1 ms).
+    private static final String TABLE_SEARCH = "users_fts";
+    private static final String COL_USER_NUMBER = "user_number";
+
+    // Single-row marker that changes, in the same transaction, with every change to the gallery's
+    // contents. The mapped gallery file records the value it reflects and is rebuilt on mismatch.
+    // Values are random rather than counted, so one from a rolled-back transaction never comes back.
+    private static final String TABLE_GALLERY_STATE = "gallery_state";
+    private static final String COL_GENERATION = "generation";
+    private static final String GALLERY_DIR = "gallery";
+
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM " + TABLE_FINGERPRINTS;
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE_FINGERPRINTS + " (" +
+            COL_USER_ID + ", " + COL_USER_NAME + ", " + COL_IMAGE_PATH + ", " +
+            COL_TEMPLATE + ", " + COL_QUALITY + ", " + COL_NFIQ + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_OR_IGNORE = SQL_INSERT.replaceFirst("INSERT", "INSERT OR IGNORE");
+    private static final String SQL_SEQ_PEEK = "SELECT " + COL_SEQ_VALUE + " FROM " + TABLE_SEQUENCE;
+    private static final String SQL_SEQ_NEXT = "UPDATE " + TABLE_SEQUENCE + " SET " + COL_SEQ_VALUE + " = " + COL_SEQ_VALUE + " + 1";
+    private static final String SQL_SEQ_RAISE = "UPDATE " + TABLE_SEQUENCE + " SET " + COL_SEQ_VALUE + " = ?" +
+            " WHERE " + COL_SEQ_VALUE + " < ?";
+    private static final String SQL_IMAGE_PATH = "SELECT " + COL_IMAGE_PATH + " FROM " + TABLE_FINGERPRINTS +
+            " WHERE " + COL_USER_ID + " = ?";
+    private static final String SQL_DELETE = "DELETE FROM " + TABLE_FINGERPRINTS + " WHERE " + COL_USER_ID + " = ?";
+    private static final String SQL_GEN_PEEK = "SELECT " + COL_GENERATION + " FROM " + TABLE_GALLERY_STATE;
+    private static final String SQL_GEN_SET = "UPDATE " + TABLE_GALLERY_STATE + " SET " + COL_GENERATION + " = ?";
+    private static final String SQL_RENAME = "UPDATE " + TABLE_FINGERPRINTS + " SET " + COL_USER_NAME + " = ?" +
+            " WHERE " + COL_USER_ID + " = ?";
+
+    private static FingerprintDatabaseHelper instance;
+
+    // Compiled once per app run. A statement is not thread-safe, so callers lock it while binding and executing.
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    private final File galleryDir;
+    private final Object galleryLock = new Object();
+    // Guarded by galleryLock. Open once loaded or first updated; null when missing or out of date.
+    private GalleryFile galleryFile;
+
+    // Reference templates for verification by user ID, used while the full gallery is not loaded.
+    private final TemplateCache templateCache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+
+    private interface GalleryFileUpdate {
+        void apply(GalleryFile file, long generation) throws IOException;
+    }
+
+    public static synchronized FingerprintDatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new FingerprintDatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // One helper, and so one connection pool, for the whole process. It is never closed; WAL lets
+    // identification reads run alongside enrollment writes.
+    private FingerprintDatabaseHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+        galleryDir = new File(context.getFilesDir(), GALLERY_DIR);
+    }
+
+    private synchronized SQLiteStatement statement(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = getWritableDatabase().compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
     }
 
     @Override
@@ -42,118 +123,346 @@ public class FingerprintDatabaseHelper extends SQLiteOpenHelper {
                 COL_NFIQ + " INTEGER, " +
                 COL_CREATED_AT + " DATETIME DEFAULT CURRENT_TIMESTAMP)";
         db.execSQL(createTable);
+        createSequence(db);
+        createSearchIndex(db);
+        createGalleryState(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FINGERPRINTS);
-        onCreate(db);
+        if (oldVersion < 2) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_FINGERPRINTS);
+            onCreate(db);
+            return;
+        }
+        if (oldVersion < 3) {
+            createSequence(db);
+        }
+        if (oldVersion < 5) {
+            createGalleryState(db);
+        }
+        if (oldVersion < 7) {
+            // Rebuilt with prefix indexes (6) and a number only for USER_<digits> IDs (7).
+            dropSearchIndex(db);
+            createSearchIndex(db);
+        }
     }
 
+    private static void createGalleryState(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_GALLERY_STATE + " (" + COL_GENERATION + " INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + TABLE_GALLERY_STATE + " VALUES (0)");
+    }
 
-    public String getNextUserId() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        int maxId = 0;
-        Cursor cursor = null;
-        try {
+    private static void dropSearchIndex(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_SEARCH + "_insert");
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_SEARCH + "_rename");
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_SEARCH + "_delete");
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SEARCH);
+    }
 
-            cursor = db.rawQuery("SELECT " + COL_USER_ID + " FROM " + TABLE_FINGERPRINTS, null);
-            if (cursor.moveToFirst()) {
-                do {
-                    String uId = cursor.getString(0);
-                    if (uId != null && uId.startsWith("USER_")) {
-                        try {
-
-                            String numPart = uId.substring(5);
-                            int idVal = Integer.parseInt(numPart);
-                            if (idVal > maxId) {
-                                maxId = idVal;
-                            }
-                        } catch (NumberFormatException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                } while (cursor.moveToNext());
+    private static void createSearchIndex(SQLiteDatabase db) {
+        String number = "CASE WHEN " + isNumberedUserId("%1$s." + COL_USER_ID) + " THEN LTRIM(SUBSTR(%1$s." +
+                COL_USER_ID + ", " + (USER_ID_PREFIX.length() + 1) + "), '0') END";
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_SEARCH + " USING fts4(" +
+                COL_USER_ID + ", " + COL_USER_NAME + ", " + COL_USER_NUMBER + ", prefix=\"1,2,3\")");
+        db.execSQL("CREATE TRIGGER " + TABLE_SEARCH + "_insert AFTER INSERT ON " + TABLE_FINGERPRINTS + " BEGIN " +
+                "INSERT INTO " + TABLE_SEARCH + " (docid, " + COL_USER_ID + ", " + COL_USER_NAME + ", " + COL_USER_NUMBER + ")" +
+                " VALUES (new." + COL_ID + ", new." + COL_USER_ID + ", new." + COL_USER_NAME + ", " + String.format(number, "new") + "); END");
+        db.execSQL("CREATE TRIGGER " + TABLE_SEARCH + "_rename AFTER UPDATE OF " + COL_USER_NAME + " ON " + TABLE_FINGERPRINTS + " BEGIN " +
+                "UPDATE " + TABLE_SEARCH + " SET " + COL_USER_NAME + " = new." + COL_USER_NAME +
+                " WHERE docid = new." + COL_ID + "; END");
+        db.execSQL("CREATE TRIGGER " + TABLE_SEARCH + "_delete AFTER DELETE ON " + TABLE_FINGERPRINTS + " BEGIN " +
+                "DELETE FROM " + TABLE_SEARCH + " WHERE docid = old." + COL_ID + "; END");
+        db.execSQL("INSERT INTO " + TABLE_SEARCH + " (docid, " + COL_USER_ID + ", " + COL_USER_NAME + ", " + COL_USER_NUMBER + ")" +
+                " SELECT " + COL_ID + ", " + COL_USER_ID + ", " + COL_USER_NAME + ", " + String.format(number, TABLE_FINGERPRINTS) +
+                " FROM " + TABLE_FINGERPRINTS);
+    }
+
+    // Every word of the input must prefix-match a word of the name or ID. Only letters and digits
+    // reach MATCH, so user input can never form FTS operators. Each returned expression must match;
+    // the list is empty when there is nothing to search for.
+    //
+    // A number with leading zeros may be a name token ("007") or an ID typed with any padding
+    // ("0042" for USER_042, whose user_number is 42), so it gets its own "user_number:42* OR 0042*".
+    // That is kept apart from the other terms because OR and the implicit AND bind differently in
+    // FTS's standard and enhanced query syntaxes.
+    static List<String> toMatchQueries(String input) {
+        List<String> queries = new ArrayList<>();
+        StringBuilder terms = new StringBuilder();
+        for (String term : input.split("[^\\p{L}\\p{N}]+")) {
+            if (term.isEmpty()) continue;
+            // The fts4 "simple" tokenizer folds ASCII case only, so fold the same way.
+            term = asciiLowerCase(term);
+            if (term.length() > 1 && term.startsWith("0") && term.matches("\\d+")) {
+                String number = term.replaceFirst("^0+(?=\\d)", "");
+                queries.add(COL_USER_NUMBER + ":" + number + "* OR " + term + "*");
+                continue;
+            }
+            if (terms.length() > 0) terms.append(' ');
+            terms.append(term).append('*');
+        }
+        if (terms.length() > 0) queries.add(0, terms.toString());
+        return queries;
+    }
+
+    private static String asciiLowerCase(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') chars[i] += 'a' - 'A';
+        }
+        return new String(chars);
+    }
+
+    // Seeded once from the existing USER_nnn rows; after that it only ever moves forward.
+    private static void createSequence(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SEQUENCE + " (" + COL_SEQ_VALUE + " INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + TABLE_SEQUENCE + " SELECT IFNULL(MAX(CAST(SUBSTR(" + COL_USER_ID + ", " +
+                (USER_ID_PREFIX.length() + 1) + ") AS INTEGER)), 0) FROM " + TABLE_FINGERPRINTS +
+                " WHERE " + isNumberedUserId(COL_USER_ID));
+    }
+
+    // SQL for "column is USER_ followed by digits only". LIKE would not do: it ignores case and
+    // reads the '_' of the prefix as a wildcard.
+    private static String isNumberedUserId(String column) {
+        String rest = "SUBSTR(" + column + ", " + (USER_ID_PREFIX.length() + 1) + ")";
+        return "(SUBSTR(" + column + ", 1, " + USER_ID_PREFIX.length() + ") = '" + USER_ID_PREFIX + "'" +
+                " AND " + rest + " GLOB '[0-9]*' AND " + rest + " NOT GLOB '*[^0-9]*')";
+    }
+
+    private static String formatUserId(long number) {
+        return String.format("USER_%03d", number);
+    }
+
+    // What someone types when claiming an identity: "42", "042" and "user_042" all mean USER_042.
+    public static String toUserId(String input) {
+        String trimmed = input.trim();
+        if (!trimmed.isEmpty() && trimmed.chars().allMatch(Character::isDigit)) {
+            try {
+                return formatUserId(Long.parseLong(trimmed));
+            } catch (NumberFormatException e) {
+                return trimmed;
             }
-        } catch (Exception e) {
-            Log.e("DB", "Error calculating next ID", e);
-        } finally {
-            if (cursor != null) cursor.close();
-            db.close();
         }
+        return trimmed.regionMatches(true, 0, USER_ID_PREFIX, 0, USER_ID_PREFIX.length())
+                ? USER_ID_PREFIX + trimmed.substring(USER_ID_PREFIX.length()) : trimmed;
+    }
 
-        return String.format("USER_%03d", maxId + 1);
+    private static long parseUserId(String userId) {
+        if (userId == null || !userId.startsWith(USER_ID_PREFIX)) return 0;
+        try {
+            return Long.parseLong(userId.substring(USER_ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
+    public interface ImagePathFactory {
+        String pathFor(String userId);
+    }
+
+    // For display only: the ID the next enrollment will most likely get. The real one is assigned
+    // by saveFingerprint, so two concurrent enrollments never share it.
+    public String getNextUserId() {
+        return getNextUserId(0);
+    }
+
+    // Same, with `ahead` saves still queued in front of it.
+    public String getNextUserId(int ahead) {
+        SQLiteStatement peek = statement(SQL_SEQ_PEEK);
+        synchronized (peek) {
+            return formatUserId(peek.simpleQueryForLong() + 1 + ahead);
+        }
+    }
 
     public boolean deleteUser(String userId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = null;
         boolean success = false;
         try {
-
-            cursor = db.rawQuery("SELECT " + COL_IMAGE_PATH + " FROM " + TABLE_FINGERPRINTS + " WHERE " + COL_USER_ID + "=?", new String[]{userId});
-            if (cursor.moveToFirst()) {
-                String path = cursor.getString(0);
-                if (path != null) {
-                    File file = new File(path);
-                    if (file.exists()) {
-                        file.delete();
-                    }
+            String path = getImagePath(userId);
+
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement delete = statement(SQL_DELETE);
+            int rows;
+            db.beginTransactionNonExclusive();
+            try {
+                synchronized (delete) {
+                    delete.bindString(1, userId);
+                    rows = delete.executeUpdateDelete();
+                    delete.clearBindings();
                 }
+                if (rows > 0) updateGalleryFile((file, generation) -> file.remove(userId, generation));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-
-
-            int rows = db.delete(TABLE_FINGERPRINTS, COL_USER_ID + "=?", new String[]{userId});
             success = (rows > 0);
+            if (success) {
+                templateCache.invalidate(userId);
+                TemplateGallery.getInstance().remove(userId);
+            }
+
+            // After the row is gone, so an image write still in flight either lands before this
+            // and is deleted here, or lands after and finds no row (see isImageReferenced).
+            if (path != null) {
+                File file = new File(path);
+                if (file.exists()) {
+                    file.delete();
+                }
+            }
 
         } catch (Exception e) {
             Log.e("DB", "Error deleting user", e);
-        } finally {
-            if (cursor != null) cursor.close();
-            db.close();
         }
         return success;
     }
 
-    public boolean saveFingerprint(String userId, String name, String imagePath, byte[] template, int quality, int nfiq) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
+    // Whether the user's row still points at this image; false once the user is deleted.
+    public boolean isImageReferenced(String userId, String path) {
+        return path.equals(getImagePath(userId));
+    }
+
+    private String getImagePath(String userId) {
+        SQLiteStatement pathQuery = statement(SQL_IMAGE_PATH);
+        synchronized (pathQuery) {
+            pathQuery.bindString(1, userId);
+            try {
+                return pathQuery.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                // no such user
+                return null;
+            } finally {
+                pathQuery.clearBindings();
+            }
+        }
+    }
+
+    // Allocates the next USER_nnn and inserts the row in one transaction, so the ID is never handed
+    // out without its row. Returns the assigned user ID, or null if nothing was saved.
+    public String saveFingerprint(String name, ImagePathFactory imagePaths, byte[] template, int quality, int nfiq) {
+        String userId = null;
+        String imagePath = null;
+        SQLiteDatabase db = getWritableDatabase();
         try {
-            values.put(COL_USER_ID, userId);
-            values.put(COL_USER_NAME, name);
-            values.put(COL_IMAGE_PATH, imagePath);
-            values.put(COL_TEMPLATE, template);
-            values.put(COL_QUALITY, quality);
-            values.put(COL_NFIQ, nfiq);
-            long result = db.insert(TABLE_FINGERPRINTS, null, values);
-            db.close();
-            return result != -1;
+            db.beginTransactionNonExclusive();
+            try {
+                SQLiteStatement next = statement(SQL_SEQ_NEXT);
+                SQLiteStatement peek = statement(SQL_SEQ_PEEK);
+                long number;
+                synchronized (next) {
+                    next.executeUpdateDelete();
+                }
+                synchronized (peek) {
+                    number = peek.simpleQueryForLong();
+                }
+                String allocated = formatUserId(number);
+                imagePath = imagePaths != null ? imagePaths.pathFor(allocated) : null;
+
+                SQLiteStatement insert = statement(SQL_INSERT);
+                long rowId;
+                synchronized (insert) {
+                    insert.bindString(1, allocated);
+                    bindNullable(insert, 2, name);
+                    bindNullable(insert, 3, imagePath);
+                    insert.bindBlob(4, template);
+                    insert.bindLong(5, quality);
+                    insert.bindLong(6, nfiq);
+                    rowId = insert.executeInsert();
+                    insert.clearBindings();
+                    if (rowId == -1) return null;
+                }
+                GalleryFile.Record record = new GalleryFile.Record(rowId, allocated, name, template);
+                updateGalleryFile((file, generation) -> file.append(Collections.singletonList(record), generation));
+                db.setTransactionSuccessful();
+                userId = allocated;
+            } finally {
+                db.endTransaction();
+            }
         } catch (Exception e) {
-            db.close();
-            return false;
+            Log.e("DB", "Error saving fingerprint", e);
+            return null;
         }
+
+        // IDs start over after clearDatabase, so this one may have been looked up before.
+        templateCache.invalidate(userId);
+        TemplateGallery.getInstance().put(new TemplateGallery.Entry(userId, name, template));
+        return userId;
     }
 
-    public int getUserCount() {
-        int count = 0;
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
+    // Inserts the whole batch in one transaction (one fsync) and returns the records that were
+    // added; rows whose user ID already exists are left untouched and omitted.
+    public List<UserRecord> insertBatch(List<UserRecord> batch) {
+        List<UserRecord> inserted = new ArrayList<>(batch.size());
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = statement(SQL_INSERT_OR_IGNORE);
+        SQLiteStatement raise = statement(SQL_SEQ_RAISE);
+        long highest = 0;
+        // Transaction first, then statement locks, in the same order as saveFingerprint.
+        db.beginTransactionNonExclusive();
         try {
-            cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_FINGERPRINTS, null);
-            if (cursor.moveToFirst()) count = cursor.getInt(0);
+            synchronized (insert) {
+                for (UserRecord record : batch) {
+                    insert.bindString(1, record.userId);
+                    bindNullable(insert, 2, record.userName);
+                    bindNullable(insert, 3, record.imagePath);
+                    insert.bindBlob(4, record.template);
+                    insert.bindLong(5, record.quality);
+                    insert.bindLong(6, record.nfiq);
+                    long rowId = insert.executeInsert();
+                    if (rowId != -1) {
+                        record.rowId = rowId;
+                        inserted.add(record);
+                        highest = Math.max(highest, parseUserId(record.userId));
+                    }
+                    insert.clearBindings();
+                }
+            }
+            // Imported USER_nnn IDs must never be handed out again.
+            synchronized (raise) {
+                raise.bindLong(1, highest);
+                raise.bindLong(2, highest);
+                raise.executeUpdateDelete();
+                raise.clearBindings();
+            }
+            if (!inserted.isEmpty()) {
+                List<GalleryFile.Record> records = new ArrayList<>(inserted.size());
+                for (UserRecord record : inserted) {
+                    records.add(new GalleryFile.Record(record.rowId, record.userId, record.userName, record.template));
+                }
+                updateGalleryFile((file, generation) -> file.append(records, generation));
+            }
+            db.setTransactionSuccessful();
         } finally {
-            if (cursor != null) cursor.close();
-            db.close();
+            db.endTransaction();
+        }
+
+        List<TemplateGallery.Entry> entries = new ArrayList<>(inserted.size());
+        for (UserRecord record : inserted) {
+            templateCache.invalidate(record.userId);
+            entries.add(new TemplateGallery.Entry(record.userId, record.userName, record.template));
         }
-        return count;
+        TemplateGallery.getInstance().putAll(entries);
+        return inserted;
+    }
+
+    public int getUserCount() {
+        SQLiteStatement count = statement(SQL_COUNT);
+        synchronized (count) {
+            return (int) count.simpleQueryForLong();
+        }
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) statement.bindNull(index);
+        else statement.bindString(index, value);
     }
 
     public static class UserRecord {
+        public long rowId;
         public String userId;
         public String userName;
         public String imagePath;
         public byte[] template;
+        public int quality;
+        public int nfiq;
 
         public UserRecord(String id, String name, String path, byte[] temp) {
             this.userId = id;
@@ -185,7 +494,70 @@ public class FingerprintDatabaseHelper extends SQLiteOpenHelper {
             Log.e("DB", "Error fetching user list", e);
         } finally {
             if (cursor != null) cursor.close();
-            db.close();
+        }
+        return users;
+    }
+
+    // Keyset page in enrollment order: the users after afterRowId (0 for the first page). Seeks on
+    // the primary key, so page N costs the same as page 1.
+    public List<UserRecord> getUsersPage(long afterRowId, int limit) {
+        List<UserRecord> users = new ArrayList<>(limit);
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + COL_ID + ", " + COL_USER_ID + ", " + COL_USER_NAME + ", " + COL_IMAGE_PATH +
+                    " FROM " + TABLE_FINGERPRINTS + " WHERE " + COL_ID + " > ? ORDER BY " + COL_ID + " LIMIT ?",
+                    new String[]{String.valueOf(afterRowId), String.valueOf(limit)});
+            if (cursor.moveToFirst()) {
+                do {
+                    UserRecord user = new UserRecord(cursor.getString(1), cursor.getString(2), cursor.getString(3));
+                    user.rowId = cursor.getLong(0);
+                    users.add(user);
+                } while (cursor.moveToNext());
+            }
+        } catch (Exception e) {
+            Log.e("DB", "Error fetching user page", e);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return users;
+    }
+
+    // Same keyset paging as getUsersPage, over the users whose name or ID matches the query.
+    public List<UserRecord> searchUsers(String queryText, long afterRowId, int limit) {
+        List<UserRecord> users = new ArrayList<>(limit);
+        List<String> matches = toMatchQueries(queryText);
+        if (matches.isEmpty()) return users;
+
+        // FTS4 allows one MATCH per table reference, so further expressions go through the docid.
+        StringBuilder where = new StringBuilder(TABLE_SEARCH + " MATCH ?");
+        for (int i = 1; i < matches.size(); i++) {
+            where.append(" AND ").append(TABLE_SEARCH).append(".docid IN (SELECT docid FROM ").append(TABLE_SEARCH)
+                    .append(" WHERE ").append(TABLE_SEARCH).append(" MATCH ?)");
+        }
+        List<String> args = new ArrayList<>(matches);
+        args.add(String.valueOf(afterRowId));
+        args.add(String.valueOf(limit));
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT f." + COL_ID + ", f." + COL_USER_ID + ", f." + COL_USER_NAME + ", f." + COL_IMAGE_PATH +
+                    " FROM " + TABLE_SEARCH + " JOIN " + TABLE_FINGERPRINTS + " f ON f." + COL_ID + " = " + TABLE_SEARCH + ".docid" +
+                    " WHERE " + where + " AND " + TABLE_SEARCH + ".docid > ?" +
+                    " ORDER BY " + TABLE_SEARCH + ".docid LIMIT ?",
+                    args.toArray(new String[0]));
+            if (cursor.moveToFirst()) {
+                do {
+                    UserRecord user = new UserRecord(cursor.getString(1), cursor.getString(2), cursor.getString(3));
+                    user.rowId = cursor.getLong(0);
+                    users.add(user);
+                } while (cursor.moveToNext());
+            }
+        } catch (Exception e) {
+            Log.e("DB", "Error searching users", e);
+        } finally {
+            if (cursor != null) cursor.close();
         }
         return users;
     }
@@ -204,11 +576,132 @@ public class FingerprintDatabaseHelper extends SQLiteOpenHelper {
             }
         } finally {
             if (cursor != null) cursor.close();
-            db.close();
         }
         return users;
     }
 
+    public List<TemplateGallery.Entry> getTemplateGallery() {
+        return TemplateGallery.getInstance().getEntries(this::loadGalleryEntries);
+    }
+
+    // From the mapped gallery file when it matches the database; templates then page in as they
+    // are matched. Otherwise from SQLite, rewriting the file on the way.
+    private List<TemplateGallery.Entry> loadGalleryEntries() {
+        synchronized (galleryLock) {
+            closeGalleryFile();
+            try {
+                GalleryFile file = GalleryFile.open(galleryDir, galleryGeneration());
+                if (!file.needsCompaction()) {
+                    galleryFile = file;
+                    return file.getEntries();
+                }
+                file.close();
+                Log.i("DB", "Compacting gallery file");
+            } catch (IOException e) {
+                Log.i("DB", "Rebuilding gallery file: " + e.getMessage());
+            }
+        }
+        return rebuildGallery();
+    }
+
+    private List<TemplateGallery.Entry> rebuildGallery() {
+        List<TemplateGallery.Entry> entries = new ArrayList<>();
+        SQLiteDatabase db = getWritableDatabase();
+        Cursor cursor = null;
+        // Holds off writers, so the rows and the generation written with them agree.
+        db.beginTransactionNonExclusive();
+        try {
+            GalleryFile.Builder builder;
+            try {
+                builder = GalleryFile.rebuild(galleryDir, galleryGeneration());
+            } catch (IOException e) {
+                Log.e("DB", "Cannot write gallery file", e);
+                builder = null;
+            }
+            cursor = db.rawQuery("SELECT " + COL_ID + ", " + COL_USER_ID + ", " + COL_USER_NAME + ", " + COL_TEMPLATE +
+                    " FROM " + TABLE_FINGERPRINTS + " ORDER BY " + COL_ID, null);
+            while (cursor.moveToNext()) {
+                TemplateGallery.Entry entry = new TemplateGallery.Entry(cursor.getString(1), cursor.getString(2), cursor.getBlob(3));
+                entries.add(entry);
+                if (builder == null) continue;
+                try {
+                    builder.add(cursor.getLong(0), entry.getUserId(), entry.getUserName(), entry.getTemplate());
+                } catch (IOException e) {
+                    Log.e("DB", "Cannot write gallery file", e);
+                    builder.abort();
+                    builder = null;
+                }
+            }
+            if (builder != null) {
+                synchronized (galleryLock) {
+                    closeGalleryFile();
+                    try {
+                        galleryFile = builder.commit();
+                    } catch (IOException e) {
+                        Log.e("DB", "Cannot write gallery file", e);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (cursor != null) cursor.close();
+            db.endTransaction();
+        }
+        return entries;
+    }
+
+    private long galleryGeneration() {
+        SQLiteStatement peek = statement(SQL_GEN_PEEK);
+        synchronized (peek) {
+            return peek.simpleQueryForLong();
+        }
+    }
+
+    // Called inside the transaction that changes the gallery, after the SQLite write. Moves the
+    // generation on and applies the same change to the file. If the transaction then rolls back, or
+    // the process dies before it commits, the file's generation is one SQLite never had; if the file
+    // update fails, the file is deleted. Either way the next load rebuilds it.
+    private void updateGalleryFile(GalleryFileUpdate update) {
+        long previous = galleryGeneration();
+        long generation;
+        do {
+            generation = ThreadLocalRandom.current().nextLong();
+        } while (generation == previous || generation == GalleryFile.DIRTY_GENERATION);
+        SQLiteStatement set = statement(SQL_GEN_SET);
+        synchronized (set) {
+            set.bindLong(1, generation);
+            set.executeUpdateDelete();
+            set.clearBindings();
+        }
+
+        synchronized (galleryLock) {
+            try {
+                if (galleryFile == null) {
+                    galleryFile = GalleryFile.open(galleryDir, previous);
+                } else if (galleryFile.getGeneration() != previous) {
+                    throw new IOException("Gallery file is out of step with the database");
+                }
+                update.apply(galleryFile, generation);
+            } catch (FileNotFoundException e) {
+                // Not written yet; the first load creates it.
+            } catch (IOException e) {
+                Log.w("DB", "Discarding gallery file: " + e.getMessage());
+                closeGalleryFile();
+                GalleryFile.delete(galleryDir);
+            }
+        }
+    }
+
+    private void closeGalleryFile() {
+        if (galleryFile == null) return;
+        try {
+            galleryFile.close();
+        } catch (IOException e) {
+            Log.w("DB", "Error closing gallery file", e);
+        }
+        galleryFile = null;
+    }
+
 
 
     public Cursor getUsersCursor() {
@@ -221,35 +714,83 @@ public class FingerprintDatabaseHelper extends SQLiteOpenHelper {
 
 
     public boolean updateUserName(String userId, String newName) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_USER_NAME, newName);
-
-
-        int rows = db.update(TABLE_FINGERPRINTS, values, COL_USER_ID + " = ?", new String[]{userId});
-        db.close();
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement rename = statement(SQL_RENAME);
+        int rows;
+        db.beginTransactionNonExclusive();
+        try {
+            synchronized (rename) {
+                bindNullable(rename, 1, newName);
+                rename.bindString(2, userId);
+                rows = rename.executeUpdateDelete();
+                rename.clearBindings();
+            }
+            if (rows > 0) updateGalleryFile((file, generation) -> file.rename(userId, newName, generation));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rows > 0) {
+            templateCache.invalidate(userId);
+            TemplateGallery.getInstance().rename(userId, newName);
+        }
 
         return rows > 0;
     }
 
     public byte[] getTemplateByUserId(String userId) {
+        TemplateGallery.Entry entry = getVerificationEntry(userId);
+        return entry != null ? entry.getTemplate() : null;
+    }
+
+    // The reference for a 1:1 verification, or null if there is no such user. Comes from the
+    // gallery when it is loaded, else from the template cache, and only then from the database.
+    public TemplateGallery.Entry getVerificationEntry(String userId) {
+        TemplateGallery gallery = TemplateGallery.getInstance();
+        if (gallery.isLoaded()) {
+            TemplateGallery.Entry entry = gallery.get(userId);
+            if (entry != null) return entry;
+        }
+        return templateCache.get(userId, this::loadEntryByUserId);
+    }
+
+    public String getTemplateCacheStats() {
+        return templateCache.getStats();
+    }
+
+    private TemplateGallery.Entry loadEntryByUserId(String userId) {
         SQLiteDatabase db = this.getReadableDatabase();
-        byte[] template = null;
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery("SELECT " + COL_TEMPLATE + " FROM " + TABLE_FINGERPRINTS + " WHERE " + COL_USER_ID + " = ?", new String[]{userId});
-            if (cursor != null && cursor.moveToFirst()) template = cursor.getBlob(0);
+            cursor = db.rawQuery("SELECT " + COL_USER_NAME + ", " + COL_TEMPLATE + " FROM " + TABLE_FINGERPRINTS +
+                    " WHERE " + COL_USER_ID + " = ?", new String[]{userId});
+            if (cursor != null && cursor.moveToFirst()) {
+                return new TemplateGallery.Entry(userId, cursor.getString(0), cursor.getBlob(1));
+            }
         } finally {
             if (cursor != null) cursor.close();
-            db.close();
         }
-        return template;
+        return null;
     }
 
     public void clearDatabase() {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_FINGERPRINTS, null, null);
-        db.close();
+        db.beginTransactionNonExclusive();
+        try {
+            db.delete(TABLE_FINGERPRINTS, null, null);
+            db.execSQL("UPDATE " + TABLE_SEQUENCE + " SET " + COL_SEQ_VALUE + " = 0");
+            synchronized (galleryLock) {
+                // Deleted, not emptied in place: a scan in progress may still be reading the old
+                // mapping. The next load writes an empty one.
+                closeGalleryFile();
+                GalleryFile.delete(galleryDir);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        templateCache.invalidateAll();
+        TemplateGallery.getInstance().clear();
     }
 
     public void clearSavedFiles(String folderPath) {
@@ -0,0 +1,106 @@
+package com.mantra.biometricauthmorfin;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+// Persists capture images on the I/O pool so enrollment never waits on file I/O. BMPs
+// are re-encoded as grayscale PNG; anything the decoder does not understand fails the write.
+public class FingerprintImageWriter {
+
+    private static final String TAG = "ImageWriter";
+
+    public static final String EXTENSION = ".png";
+
+    // Asked once the file is in place, since its user may have been deleted while the write was
+    // queued; false has the file deleted again.
+    public interface Owner {
+        boolean stillWants(File file);
+    }
+
+    public interface Callback {
+        // Runs on an I/O thread, or on the caller's if the I/O pool no longer takes work.
+        void onImageWritten(File file, boolean success, long bytesWritten);
+    }
+
+    private static FingerprintImageWriter instance;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    public static synchronized FingerprintImageWriter getInstance() {
+        if (instance == null) {
+            instance = new FingerprintImageWriter();
+        }
+        return instance;
+    }
+
+    public void setCompressionLevel(int level) { this.compressionLevel = level; }
+
+    public int getPendingCount() { return pending.get(); }
+
+    // Takes ownership of the lease and closes it once the image is on disk, so the capture buffer
+    // goes back to the pool without ever being copied.
+    public void write(CaptureBufferPool.Lease bmp, File target, Owner owner, Callback callback) {
+        pending.incrementAndGet();
+        try {
+            AppExecutors.getInstance().io().execute(() -> {
+                boolean success = false;
+                long bytes = 0;
+                try {
+                    bytes = writeNow(bmp.array(), bmp.length(), target);
+                    success = true;
+                    if (owner != null && !owner.stillWants(target)) {
+                        Log.d(TAG, "Dropping " + target + ": no longer referenced");
+                        target.delete();
+                        success = false;
+                        bytes = 0;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Failed to write " + target, e);
+                } finally {
+                    bmp.close();
+                    pending.decrementAndGet();
+                }
+                if (callback != null) callback.onImageWritten(target, success, bytes);
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down between getInstance() and execute(): the lease is still ours to return.
+            Log.w(TAG, "Not writing " + target + ": I/O pool is shut down");
+            bmp.close();
+            pending.decrementAndGet();
+            if (callback != null) callback.onImageWritten(target, false, 0);
+        }
+    }
+
+    private long writeNow(byte[] bmp, int length, File target) throws IOException {
+        ByteBuffer data;
+        try {
+            data = ByteBuffer.wrap(GrayscaleImage.fromBmp(bmp, length).toPng(compressionLevel));
+        } catch (IllegalArgumentException e) {
+            // Written as-is it would not be a PNG, whatever the file is called.
+            throw new IOException("Cannot encode image as PNG: " + e.getMessage(), e);
+        }
+
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        // Written beside the target and renamed, so a crash never leaves a truncated image.
+        File tmp = new File(target.getPath() + ".tmp");
+        long bytes = data.remaining();
+        try (FileOutputStream fos = new FileOutputStream(tmp); FileChannel channel = fos.getChannel()) {
+            while (data.hasRemaining()) channel.write(data);
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp);
+        }
+        return bytes;
+    }
+}
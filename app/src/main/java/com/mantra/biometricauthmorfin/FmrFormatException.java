@@ -0,0 +1,10 @@
+package com.mantra.biometricauthmorfin;
+
+public class FmrFormatException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FmrFormatException(String message) {
+        super(message);
+    }
+}
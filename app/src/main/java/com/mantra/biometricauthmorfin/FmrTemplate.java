@@ -0,0 +1,210 @@
+package com.mantra.biometricauthmorfin;
+
+import java.nio.ByteBuffer;
+
+// ISO/IEC 19794-2:2011 finger minutiae record (TemplateFormat.FMR_V2011), decoded into
+// flat primitive arrays. Minutiae of all finger views are stored back to back; view v owns
+// the range [viewMinutiaeStart[v], viewMinutiaeStart[v] + viewMinutiaeCount[v]).
+public class FmrTemplate {
+
+    public static final int TYPE_OTHER = 0;
+    public static final int TYPE_RIDGE_ENDING = 1;
+    public static final int TYPE_BIFURCATION = 2;
+
+    public static final int QUALITY_NOT_REPORTED = 255;
+
+    static final int HEADER_LENGTH = 15;
+    // Capture date/time, device technology, vendor and type, between view length and quality record.
+    static final int VIEW_FIXED_LENGTH = 14;
+    // Finger position through number of minutiae, right before the minutiae themselves.
+    static final int VIEW_HEADER_LENGTH = 13;
+
+    private static final byte[] FORMAT_ID = {'F', 'M', 'R', 0};
+    private static final byte[] VERSION_2011 = {'0', '3', '0', 0};
+
+    final int recordLength;
+    final boolean certified;
+
+    final int[] fingerPosition;
+    final int[] viewNumber;
+    final int[] impressionType;
+    final int[] fingerQuality;
+    final int[] imageWidth;
+    final int[] imageHeight;
+    final int[] resolutionX;
+    final int[] resolutionY;
+    final int[] viewMinutiaeStart;
+    final int[] viewMinutiaeCount;
+
+    final short[] minutiaX;
+    final short[] minutiaY;
+    final byte[] minutiaAngle;
+    final byte[] minutiaType;
+    final byte[] minutiaQuality;
+
+    private FmrTemplate(int recordLength, boolean certified, int views, int minutiae) {
+        this.recordLength = recordLength;
+        this.certified = certified;
+        fingerPosition = new int[views];
+        viewNumber = new int[views];
+        impressionType = new int[views];
+        fingerQuality = new int[views];
+        imageWidth = new int[views];
+        imageHeight = new int[views];
+        resolutionX = new int[views];
+        resolutionY = new int[views];
+        viewMinutiaeStart = new int[views];
+        viewMinutiaeCount = new int[views];
+        minutiaX = new short[minutiae];
+        minutiaY = new short[minutiae];
+        minutiaAngle = new byte[minutiae];
+        minutiaType = new byte[minutiae];
+        minutiaQuality = new byte[minutiae];
+    }
+
+    public static FmrTemplate parse(byte[] data) {
+        return parse(ByteBuffer.wrap(data));
+    }
+
+    public static FmrTemplate parse(byte[] data, int offset, int length) {
+        return parse(ByteBuffer.wrap(data, offset, length));
+    }
+
+    // Reads from buffer.position() using absolute gets; the buffer itself is left untouched.
+    public static FmrTemplate parse(ByteBuffer buffer) {
+        int base = buffer.position();
+        int available = buffer.limit() - base;
+        if (available < HEADER_LENGTH) throw new FmrFormatException("Record shorter than header");
+
+        for (int i = 0; i < 4; i++) {
+            if (buffer.get(base + i) != FORMAT_ID[i]) throw new FmrFormatException("Not an FMR record");
+            if (buffer.get(base + 4 + i) != VERSION_2011[i]) throw new FmrFormatException("Unsupported FMR version");
+        }
+
+        long declaredLength = u32(buffer, base + 8);
+        if (declaredLength < HEADER_LENGTH || declaredLength > available) {
+            throw new FmrFormatException("Bad record length " + declaredLength);
+        }
+        int recordLength = (int) declaredLength;
+        int end = base + recordLength;
+
+        int views = u16(buffer, base + 12);
+        if (views == 0) throw new FmrFormatException("No finger views");
+        int certFlag = u8(buffer, base + 14);
+        if (certFlag > 1) throw new FmrFormatException("Bad certification flag " + certFlag);
+        boolean certified = certFlag == 1;
+
+        // First pass: validate every view header and find where its minutiae live.
+        int[] qualityOffset = new int[views];
+        int[] minutiaeOffset = new int[views];
+        int[] minutiaeCount = new int[views];
+        int[] fieldLength = new int[views];
+        int totalMinutiae = 0;
+
+        int pos = base + HEADER_LENGTH;
+        for (int v = 0; v < views; v++) {
+            int viewStart = pos;
+            require(buffer, pos, 4, end);
+            long viewLength = u32(buffer, pos);
+            if (viewLength > end - viewStart) throw new FmrFormatException("View " + v + " overruns record");
+            int viewEnd = viewStart + (int) viewLength;
+            pos += 4 + VIEW_FIXED_LENGTH;
+
+            require(buffer, pos, 1, viewEnd);
+            qualityOffset[v] = pos;
+            pos += 1 + u8(buffer, pos) * 5;
+            if (certified) {
+                require(buffer, pos, 1, viewEnd);
+                pos += 1 + u8(buffer, pos) * 3;
+            }
+
+            require(buffer, pos, VIEW_HEADER_LENGTH, viewEnd);
+            int field = u8(buffer, pos + 11) >>> 4;
+            if (field != 5 && field != 6) throw new FmrFormatException("Bad minutia field length " + field);
+            int count = u8(buffer, pos + 12);
+            pos += VIEW_HEADER_LENGTH;
+
+            require(buffer, pos, count * field + 2, viewEnd);
+            minutiaeOffset[v] = pos;
+            minutiaeCount[v] = count;
+            fieldLength[v] = field;
+            totalMinutiae += count;
+
+            pos += count * field;
+            pos += 2 + u16(buffer, pos);
+            if (pos > viewEnd) throw new FmrFormatException("Extended data overruns view " + v);
+            pos = viewEnd;
+        }
+
+        FmrTemplate t = new FmrTemplate(recordLength, certified, views, totalMinutiae);
+
+        // Second pass: decode straight into the flat arrays.
+        int m = 0;
+        for (int v = 0; v < views; v++) {
+            int header = minutiaeOffset[v] - VIEW_HEADER_LENGTH;
+            t.fingerPosition[v] = u8(buffer, header);
+            t.viewNumber[v] = u8(buffer, header + 1);
+            t.resolutionX[v] = u16(buffer, header + 2);
+            t.resolutionY[v] = u16(buffer, header + 4);
+            t.impressionType[v] = u8(buffer, header + 6);
+            t.imageWidth[v] = u16(buffer, header + 7);
+            t.imageHeight[v] = u16(buffer, header + 9);
+            t.fingerQuality[v] = u8(buffer, qualityOffset[v]) == 0 ? QUALITY_NOT_REPORTED : u8(buffer, qualityOffset[v] + 1);
+            t.viewMinutiaeStart[v] = m;
+            t.viewMinutiaeCount[v] = minutiaeCount[v];
+
+            int p = minutiaeOffset[v];
+            for (int i = 0; i < minutiaeCount[v]; i++, m++, p += fieldLength[v]) {
+                int xw = u16(buffer, p);
+                t.minutiaType[m] = (byte) (xw >>> 14);
+                t.minutiaX[m] = (short) (xw & 0x3FFF);
+                t.minutiaY[m] = (short) (u16(buffer, p + 2) & 0x3FFF);
+                t.minutiaAngle[m] = buffer.get(p + 4);
+                t.minutiaQuality[m] = fieldLength[v] == 6 ? buffer.get(p + 5) : (byte) QUALITY_NOT_REPORTED;
+            }
+        }
+        return t;
+    }
+
+    public int getRecordLength() { return recordLength; }
+    public boolean isCertified() { return certified; }
+
+    public int getViewCount() { return fingerPosition.length; }
+    public int getFingerPosition(int view) { return fingerPosition[view]; }
+    public int getViewNumber(int view) { return viewNumber[view]; }
+    public int getImpressionType(int view) { return impressionType[view]; }
+    public int getFingerQuality(int view) { return fingerQuality[view]; }
+    public int getImageWidth(int view) { return imageWidth[view]; }
+    public int getImageHeight(int view) { return imageHeight[view]; }
+    public int getResolutionX(int view) { return resolutionX[view]; }
+    public int getResolutionY(int view) { return resolutionY[view]; }
+    public int getMinutiaeStart(int view) { return viewMinutiaeStart[view]; }
+    public int getMinutiaeCount(int view) { return viewMinutiaeCount[view]; }
+
+    public int getMinutiaeCount() { return minutiaX.length; }
+    public int getX(int i) { return minutiaX[i]; }
+    public int getY(int i) { return minutiaY[i]; }
+    public int getType(int i) { return minutiaType[i]; }
+    public int getQuality(int i) { return minutiaQuality[i] & 0xFF; }
+
+    // Raw angle in units of 360/256 degrees, as stored in the record.
+    public int getAngle(int i) { return minutiaAngle[i] & 0xFF; }
+
+    public float getAngleDegrees(int i) { return getAngle(i) * (360f / 256f); }
+
+    private static void require(ByteBuffer buffer, int pos, int length, int end) {
+        if (length < 0 || pos + length > end) throw new FmrFormatException("Truncated record at " + (pos - buffer.position()));
+    }
+
+    private static int u8(ByteBuffer b, int pos) {
+        return b.get(pos) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer b, int pos) {
+        return ((b.get(pos) & 0xFF) << 8) | (b.get(pos + 1) & 0xFF);
+    }
+
+    private static long u32(ByteBuffer b, int pos) {
+        return ((long) u16(b, pos) << 16) | u16(b, pos + 2);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mantra.biometricauthmorfin;
+
+import java.io.ByteArrayOutputStream;
+
+// Builds single-view FMR_V2011 records, for synthetic galleries and simulated captures.
+public class FmrTemplateWriter {
+
+    private static final int MINUTIA_LENGTH = 6;
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int resolution;
+    private int fingerPosition = 0;
+    private int fingerQuality = 80;
+
+    private final ByteArrayOutputStream minutiae = new ByteArrayOutputStream();
+    private int minutiaeCount = 0;
+
+    // Resolution is in pixels per centimetre (197 for a 500 dpi sensor).
+    public FmrTemplateWriter(int imageWidth, int imageHeight, int resolution) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.resolution = resolution;
+    }
+
+    public FmrTemplateWriter setFingerPosition(int fingerPosition) {
+        this.fingerPosition = fingerPosition;
+        return this;
+    }
+
+    public FmrTemplateWriter setFingerQuality(int fingerQuality) {
+        this.fingerQuality = fingerQuality;
+        return this;
+    }
+
+    // Angle in units of 360/256 degrees.
+    public FmrTemplateWriter addMinutia(int type, int x, int y, int angle, int quality) {
+        if (minutiaeCount == 255) throw new IllegalStateException("A view holds at most 255 minutiae");
+        writeShort(minutiae, ((type & 0x3) << 14) | (x & 0x3FFF));
+        writeShort(minutiae, y & 0x3FFF);
+        minutiae.write(angle & 0xFF);
+        minutiae.write(quality & 0xFF);
+        minutiaeCount++;
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        int viewLength = 4 + FmrTemplate.VIEW_FIXED_LENGTH + 1 + 5
+                + FmrTemplate.VIEW_HEADER_LENGTH + minutiaeCount * MINUTIA_LENGTH + 2;
+        int recordLength = FmrTemplate.HEADER_LENGTH + viewLength;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(recordLength);
+        out.write('F'); out.write('M'); out.write('R'); out.write(0);
+        out.write('0'); out.write('3'); out.write('0'); out.write(0);
+        writeInt(out, recordLength);
+        writeShort(out, 1);
+        out.write(0);
+
+        writeInt(out, viewLength);
+        for (int i = 0; i < FmrTemplate.VIEW_FIXED_LENGTH; i++) out.write(0);
+        out.write(1);
+        out.write(fingerQuality);
+        writeShort(out, 0);
+        writeShort(out, 0);
+
+        out.write(fingerPosition);
+        out.write(0);
+        writeShort(out, resolution);
+        writeShort(out, resolution);
+        out.write(0);
+        writeShort(out, imageWidth);
+        writeShort(out, imageHeight);
+        out.write(MINUTIA_LENGTH << 4);
+        out.write(minutiaeCount);
+        byte[] body = minutiae.toByteArray();
+        out.write(body, 0, body.length);
+        writeShort(out, 0);
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int v) {
+        out.write((v >>> 8) & 0xFF);
+        out.write(v & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        writeShort(out, v >>> 16);
+        writeShort(out, v);
+    }
+}
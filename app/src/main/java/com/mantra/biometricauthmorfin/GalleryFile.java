@@ -0,0 +1,426 @@
+package com.mantra.biometricauthmorfin;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+// On-disk copy of the template gallery that is memory-mapped at startup, so the first
+// identification after a restart does not pull every template out of SQLite. Templates are
+// copied out of the mapping for each match and dropped again, so the heap never holds the gallery.
+//
+//   gallery.idx  header, then one fixed-width slot per entry:
+//                row id (8), record offset in gallery.dat (8), record length (4), flags (4)
+//   gallery.dat  file id (8), then records back to back:
+//                user id length (2) + UTF-8, name length (2) + UTF-8, template length (4) + bytes
+//
+// The header names the SQLite generation the file reflects, with a CRC. An update first writes and
+// syncs DIRTY_GENERATION there, then changes and syncs the slots and records, then writes and syncs
+// the new generation; a crash at any point leaves the header dirty, stale or invalid, and the owner
+// rebuilds. The slots never change under a header that still names a committed generation. Deletes flag the slot, renames append a new record. Files are replaced by
+// rename and never truncated, since entries handed out earlier still read from the old mapping.
+public class GalleryFile implements Closeable {
+
+    static final String INDEX_NAME = "gallery.idx";
+    static final String DATA_NAME = "gallery.dat";
+
+    private static final int MAGIC = 0x46504749;  // "FPGI"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int SLOT_SIZE = 24;
+    private static final int DATA_HEADER_SIZE = 8;
+    private static final int FLAG_LIVE = 1;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final long MIN_GARBAGE_TO_COMPACT = 256 * 1024;
+    // In the header while an update is in progress; never used as a real generation.
+    public static final long DIRTY_GENERATION = Long.MIN_VALUE;
+
+    public static final class Record {
+        final long rowId;
+        final String userId;
+        final String userName;
+        final byte[] template;
+
+        public Record(long rowId, String userId, String userName, byte[] template) {
+            this.rowId = rowId;
+            this.userId = userId;
+            this.userName = userName;
+            this.template = template;
+        }
+    }
+
+    private static final class Slot {
+        final int index;
+        long offset;
+        int length;
+
+        Slot(int index, long offset, int length) {
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final RandomAccessFile index;
+    private final RandomAccessFile data;
+    private final long fileId;
+    private final List<TemplateGallery.Entry> entries;
+    private final Map<String, Slot> slots;
+
+    // Guarded by this.
+    private long generation;
+    private int count;
+    private long dataLength;
+    private long liveBytes;
+
+    private GalleryFile(RandomAccessFile index, RandomAccessFile data, long fileId, long generation,
+                        int count, long dataLength, Map<String, Slot> slots, List<TemplateGallery.Entry> entries) {
+        this.index = index;
+        this.data = data;
+        this.fileId = fileId;
+        this.generation = generation;
+        this.count = count;
+        this.dataLength = dataLength;
+        this.slots = slots;
+        this.entries = entries;
+        for (Slot slot : slots.values()) liveBytes += slot.length;
+    }
+
+    // Maps the files in dir. Throws if they are missing, damaged or not at the expected generation.
+    public static GalleryFile open(File dir, long expectedGeneration) throws IOException {
+        File indexFile = new File(dir, INDEX_NAME);
+        File dataFile = new File(dir, DATA_NAME);
+        if (!indexFile.exists() || !dataFile.exists()) throw new FileNotFoundException("No gallery file in " + dir);
+
+        RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+        RandomAccessFile data = null;
+        try {
+            data = new RandomAccessFile(dataFile, "rw");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(index.getChannel(), header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) throw new IOException("Not a gallery file");
+            if (header.getInt(36) != crc(header)) throw new IOException("Gallery header is damaged");
+
+            long generation = header.getLong(8);
+            long fileId = header.getLong(16);
+            int count = header.getInt(24);
+            long dataLength = header.getLong(28);
+            if (generation == DIRTY_GENERATION) throw new IOException("Gallery file was left mid-update");
+            if (generation != expectedGeneration) {
+                throw new IOException("Gallery file is at generation " + generation + ", database at " + expectedGeneration);
+            }
+            if (count < 0 || index.length() < HEADER_SIZE + (long) count * SLOT_SIZE
+                    || dataLength < DATA_HEADER_SIZE || data.length() < dataLength) {
+                throw new IOException("Gallery file is truncated");
+            }
+
+            MappedByteBuffer slotMap = index.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * SLOT_SIZE);
+            MappedByteBuffer dataMap = data.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, dataLength);
+            // Written alongside the index by the same rebuild; catches a crash between the two renames.
+            if (dataMap.getLong(0) != fileId) throw new IOException("Gallery index and data do not belong together");
+
+            Map<String, Slot> slots = new HashMap<>();
+            List<TemplateGallery.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int base = i * SLOT_SIZE;
+                if ((slotMap.getInt(base + 20) & FLAG_LIVE) == 0) continue;
+                long offset = slotMap.getLong(base + 8);
+                int length = slotMap.getInt(base + 16);
+                if (offset < DATA_HEADER_SIZE || length < 8 || offset + length > dataLength) {
+                    throw new IOException("Gallery slot " + i + " is out of range");
+                }
+                TemplateGallery.Entry entry = readRecord(dataMap, (int) offset, length);
+                slots.put(entry.getUserId(), new Slot(i, offset, length));
+                entries.add(entry);
+            }
+            return new GalleryFile(index, data, fileId, generation, count, dataLength, slots,
+                    Collections.unmodifiableList(entries));
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            if (data != null) data.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Gallery file is damaged", e);
+        }
+    }
+
+    // Writes a fresh pair of files beside the current ones; commit() swaps them in.
+    public static Builder rebuild(File dir, long generation) throws IOException {
+        return new Builder(dir, generation);
+    }
+
+    public static void delete(File dir) {
+        new File(dir, INDEX_NAME).delete();
+        new File(dir, DATA_NAME).delete();
+    }
+
+    public static final class Builder {
+        private final File dir;
+        private final long generation;
+        private final long fileId = new Random().nextLong();
+        private final File indexTmp;
+        private final File dataTmp;
+        private final FileOutputStream dataFile;
+        private final DataOutputStream dataOut;
+        private final ByteArrayOutputStream slotBytes = new ByteArrayOutputStream();
+        private final DataOutputStream slotOut = new DataOutputStream(slotBytes);
+        private int count;
+        private long dataLength = DATA_HEADER_SIZE;
+
+        private Builder(File dir, long generation) throws IOException {
+            if (!dir.exists()) dir.mkdirs();
+            this.dir = dir;
+            this.generation = generation;
+            this.indexTmp = new File(dir, INDEX_NAME + ".tmp");
+            this.dataTmp = new File(dir, DATA_NAME + ".tmp");
+            this.dataFile = new FileOutputStream(dataTmp);
+            this.dataOut = new DataOutputStream(new BufferedOutputStream(dataFile, 64 * 1024));
+            dataOut.writeLong(fileId);
+        }
+
+        public Builder add(long rowId, String userId, String userName, byte[] template) throws IOException {
+            byte[] record = encodeRecord(userId, userName, template);
+            dataOut.write(record);
+            slotOut.writeLong(rowId);
+            slotOut.writeLong(dataLength);
+            slotOut.writeInt(record.length);
+            slotOut.writeInt(FLAG_LIVE);
+            dataLength += record.length;
+            count++;
+            return this;
+        }
+
+        public GalleryFile commit() throws IOException {
+            try {
+                dataOut.flush();
+                dataFile.getFD().sync();
+                dataOut.close();
+                try (FileOutputStream indexFile = new FileOutputStream(indexTmp)) {
+                    indexFile.write(header(generation, fileId, count, dataLength).array());
+                    slotBytes.writeTo(indexFile);
+                    indexFile.getFD().sync();
+                }
+                // Data first: until the index is renamed too, its file id does not match and open() refuses.
+                if (!dataTmp.renameTo(new File(dir, DATA_NAME)) || !indexTmp.renameTo(new File(dir, INDEX_NAME))) {
+                    throw new IOException("Could not replace gallery file in " + dir);
+                }
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            return open(dir, generation);
+        }
+
+        public void abort() {
+            try {
+                dataOut.close();
+            } catch (IOException ignored) {
+            }
+            indexTmp.delete();
+            dataTmp.delete();
+        }
+    }
+
+    // Live entries as of open(), in insertion order, with templates read lazily from the mapping.
+    public List<TemplateGallery.Entry> getEntries() { return entries; }
+
+    public synchronized long getGeneration() { return generation; }
+
+    public synchronized int size() { return slots.size(); }
+
+    // Once more than half the data file is dead records, a rebuild pays for itself.
+    public synchronized boolean needsCompaction() {
+        long garbage = dataLength - DATA_HEADER_SIZE - liveBytes;
+        return garbage > MIN_GARBAGE_TO_COMPACT && garbage > liveBytes;
+    }
+
+    // Each update syncs the dirty header, its changes, then the final header. After an IOException
+    // the file must be discarded.
+    public synchronized void append(List<Record> records, long generation) throws IOException {
+        markDirty();
+        for (Record record : records) {
+            long offset = appendRecord(encodeRecord(record.userId, record.userName, record.template));
+            int length = (int) (dataLength - offset);
+            writeSlot(count, record.rowId, offset, length);
+            Slot previous = slots.put(record.userId, new Slot(count, offset, length));
+            if (previous != null) {
+                writeFlags(previous.index, 0);
+                liveBytes -= previous.length;
+            }
+            liveBytes += length;
+            count++;
+        }
+        sync();
+        commitHeader(generation);
+    }
+
+    public synchronized void remove(String userId, long generation) throws IOException {
+        Slot slot = slots.remove(userId);
+        if (slot != null) {
+            markDirty();
+            writeFlags(slot.index, 0);
+            sync();
+            liveBytes -= slot.length;
+        }
+        commitHeader(generation);
+    }
+
+    public synchronized void rename(String userId, String newName, long generation) throws IOException {
+        Slot slot = slots.get(userId);
+        if (slot == null) {
+            commitHeader(generation);
+            return;
+        }
+        markDirty();
+        ByteBuffer old = ByteBuffer.allocate(slot.length);
+        readFully(data.getChannel(), old, slot.offset);
+        byte[] template = readRecord(old, 0, slot.length).getTemplate();
+
+        long offset = appendRecord(encodeRecord(userId, newName, template));
+        int length = (int) (dataLength - offset);
+        ByteBuffer location = ByteBuffer.allocate(12);
+        location.putLong(0, offset).putInt(8, length);
+        writeFully(index.getChannel(), location, slotPosition(slot.index) + 8);
+        sync();
+        liveBytes += length - slot.length;
+        slot.offset = offset;
+        slot.length = length;
+        commitHeader(generation);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            index.close();
+        } finally {
+            data.close();
+        }
+    }
+
+    private long appendRecord(byte[] record) throws IOException {
+        long offset = dataLength;
+        writeFully(data.getChannel(), ByteBuffer.wrap(record), offset);
+        dataLength += record.length;
+        return offset;
+    }
+
+    private void writeSlot(int i, long rowId, long offset, int length) throws IOException {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.putLong(0, rowId).putLong(8, offset).putInt(16, length).putInt(20, FLAG_LIVE);
+        writeFully(index.getChannel(), slot, slotPosition(i));
+    }
+
+    private void writeFlags(int i, int flags) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(0, flags);
+        writeFully(index.getChannel(), buffer, slotPosition(i) + 20);
+    }
+
+    private void sync() throws IOException {
+        data.getChannel().force(false);
+        index.getChannel().force(false);
+    }
+
+    // Synced before any slot or record changes, so a crash from here on can never leave the slots
+    // ahead of a header that names the old, still-committed generation.
+    private void markDirty() throws IOException {
+        this.generation = DIRTY_GENERATION;
+        writeFully(index.getChannel(), header(DIRTY_GENERATION, fileId, count, dataLength), 0);
+        index.getChannel().force(false);
+    }
+
+    private void commitHeader(long generation) throws IOException {
+        writeFully(index.getChannel(), header(generation, fileId, count, dataLength), 0);
+        index.getChannel().force(false);
+        this.generation = generation;
+    }
+
+    private static long slotPosition(int i) {
+        return HEADER_SIZE + (long) i * SLOT_SIZE;
+    }
+
+    private static ByteBuffer header(long generation, long fileId, int count, long dataLength) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, generation).putLong(16, fileId)
+                .putInt(24, count).putLong(28, dataLength);
+        header.putInt(36, crc(header));
+        return header;
+    }
+
+    private static int crc(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, 36);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodeRecord(String userId, String userName, byte[] template) throws IOException {
+        byte[] id = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] name = userName != null ? userName.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (id.length >= NULL_STRING || name.length >= NULL_STRING) throw new IOException("User ID or name too long for gallery file");
+        ByteBuffer record = ByteBuffer.allocate(2 + id.length + 2 + name.length + 4 + template.length);
+        record.putShort((short) id.length).put(id);
+        record.putShort((short) (userName != null ? name.length : NULL_STRING)).put(name);
+        record.putInt(template.length).put(template);
+        return record.array();
+    }
+
+    private static TemplateGallery.Entry readRecord(ByteBuffer buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        int p = offset;
+        int idLength = buffer.getShort(p) & 0xFFFF;
+        p += 2;
+        String userId = readString(buffer, p, idLength, end);
+        p += idLength;
+        int nameLength = buffer.getShort(p) & 0xFFFF;
+        p += 2;
+        String userName = null;
+        if (nameLength != NULL_STRING) {
+            userName = readString(buffer, p, nameLength, end);
+            p += nameLength;
+        }
+        int templateLength = buffer.getInt(p);
+        p += 4;
+        if (templateLength < 0 || p + templateLength != end) throw new IOException("Gallery record is damaged");
+
+        ByteBuffer template = buffer.duplicate();
+        template.limit(end).position(p);
+        return new TemplateGallery.Entry(userId, userName, template.slice());
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length, int end) throws IOException {
+        if (position + length > end) throw new IOException("Gallery record is damaged");
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new IOException("Unexpected end of gallery file");
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
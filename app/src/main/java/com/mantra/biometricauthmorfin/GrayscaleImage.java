@@ -0,0 +1,199 @@
+package com.mantra.biometricauthmorfin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// 8-bit grayscale pixels, top row first. Decodes the uncompressed BMPs the scanner hands out and
+// encodes them as grayscale PNG, which is lossless and smaller than the BMP.
+public class GrayscaleImage {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    public GrayscaleImage(int width, int height, byte[] pixels) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Bad image size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getPixel(int x, int y) { return pixels[y * width + x] & 0xFF; }
+
+    // Accepts uncompressed 8-bit (palette mapped to luma), 24-bit and 32-bit BMPs, bottom-up or top-down.
+    public static GrayscaleImage fromBmp(byte[] bmp, int length) {
+        if (length < 54 || bmp[0] != 'B' || bmp[1] != 'M') throw new IllegalArgumentException("Not a BMP");
+        int dataOffset = readInt(bmp, 10);
+        int headerSize = readInt(bmp, 14);
+        int width = readInt(bmp, 18);
+        int rawHeight = readInt(bmp, 22);
+        int bitCount = readShort(bmp, 28);
+        int compression = readInt(bmp, 30);
+        if (compression != 0 && !(compression == 3 && bitCount == 32)) {
+            throw new IllegalArgumentException("Compressed BMP not supported");
+        }
+        if (bitCount != 8 && bitCount != 24 && bitCount != 32) {
+            throw new IllegalArgumentException("Unsupported BMP depth " + bitCount);
+        }
+
+        boolean bottomUp = rawHeight > 0;
+        int height = Math.abs(rawHeight);
+        int stride = ((width * bitCount + 31) / 32) * 4;
+        if (width <= 0 || height == 0 || dataOffset < 0 || (long) dataOffset + (long) stride * height > length) {
+            throw new IllegalArgumentException("Truncated BMP");
+        }
+
+        byte[] lut = null;
+        if (bitCount == 8) {
+            int paletteStart = 14 + headerSize;
+            int colors = readInt(bmp, 46);
+            if (colors == 0) colors = 256;
+            lut = new byte[256];
+            for (int i = 0; i < 256; i++) {
+                int p = paletteStart + Math.min(i, colors - 1) * 4;
+                if (p + 3 > dataOffset) {
+                    lut[i] = (byte) i;
+                } else {
+                    lut[i] = luma(bmp[p + 2] & 0xFF, bmp[p + 1] & 0xFF, bmp[p] & 0xFF);
+                }
+            }
+        }
+
+        byte[] pixels = new byte[width * height];
+        int bytesPerPixel = bitCount / 8;
+        for (int y = 0; y < height; y++) {
+            int row = dataOffset + (bottomUp ? height - 1 - y : y) * stride;
+            int out = y * width;
+            if (lut != null) {
+                for (int x = 0; x < width; x++) pixels[out + x] = lut[bmp[row + x] & 0xFF];
+            } else {
+                for (int x = 0, p = row; x < width; x++, p += bytesPerPixel) {
+                    pixels[out + x] = luma(bmp[p + 2] & 0xFF, bmp[p + 1] & 0xFF, bmp[p] & 0xFF);
+                }
+            }
+        }
+        return new GrayscaleImage(width, height, pixels);
+    }
+
+    public byte[] toPng(int compressionLevel) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 2);
+        try {
+            writePng(out, compressionLevel);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public void writePng(OutputStream out, int compressionLevel) throws IOException {
+        out.write(PNG_SIGNATURE);
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bit depth
+        header[9] = 0;  // color type: grayscale
+        writeChunk(out, "IHDR", header, header.length);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(width * height / 2);
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater, 64 * 1024)) {
+            byte[] filtered = new byte[width + 1];
+            byte[] best = new byte[width + 1];
+            for (int y = 0; y < height; y++) {
+                filterRow(y, filtered, best);
+                deflate.write(best, 0, best.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IDAT", compressed.toByteArray(), compressed.size());
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    // Tries every PNG filter on the row and keeps the one with the smallest sum of absolute values,
+    // the usual PNG encoder heuristic.
+    private void filterRow(int y, byte[] scratch, byte[] best) {
+        int row = y * width;
+        int prev = row - width;
+        long bestScore = Long.MAX_VALUE;
+        for (int type = 0; type <= 4; type++) {
+            scratch[0] = (byte) type;
+            long score = 0;
+            for (int x = 0; x < width; x++) {
+                int cur = pixels[row + x] & 0xFF;
+                int a = x > 0 ? pixels[row + x - 1] & 0xFF : 0;
+                int b = y > 0 ? pixels[prev + x] & 0xFF : 0;
+                int c = x > 0 && y > 0 ? pixels[prev + x - 1] & 0xFF : 0;
+                int predictor;
+                switch (type) {
+                    case 1: predictor = a; break;
+                    case 2: predictor = b; break;
+                    case 3: predictor = (a + b) >>> 1; break;
+                    case 4: predictor = paeth(a, b, c); break;
+                    default: predictor = 0;
+                }
+                byte v = (byte) (cur - predictor);
+                scratch[x + 1] = v;
+                score += Math.abs((int) v);
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                System.arraycopy(scratch, 0, best, 0, scratch.length);
+            }
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        out.write(word);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int) crc.getValue());
+        out.write(word);
+    }
+
+    private static byte luma(int r, int g, int b) {
+        return (byte) ((r * 299 + g * 587 + b * 114 + 500) / 1000);
+    }
+
+    private static int readInt(byte[] b, int pos) {
+        return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+    }
+
+    private static int readShort(byte[] b, int pos) {
+        return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8;
+    }
+
+    private static void putInt(byte[] b, int pos, int v) {
+        b[pos] = (byte) (v >>> 24);
+        b[pos + 1] = (byte) (v >>> 16);
+        b[pos + 2] = (byte) (v >>> 8);
+        b[pos + 3] = (byte) v;
+    }
+}
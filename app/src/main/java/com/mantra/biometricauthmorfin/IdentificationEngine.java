@@ -0,0 +1,336 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class IdentificationEngine {
+
+    private static final int MIN_PARTITION_SIZE = 32;
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    public static class Candidate implements Comparable<Candidate> {
+        private final String userId;
+        private final String userName;
+        private final int score;
+        // The gallery entry it came from, when the engine found it.
+        final TemplateGallery.Entry entry;
+
+        public Candidate(String userId, String userName, int score) {
+            this(userId, userName, score, null);
+        }
+
+        Candidate(TemplateGallery.Entry entry, int score) {
+            this(entry.getUserId(), entry.getUserName(), score, entry);
+        }
+
+        private Candidate(String userId, String userName, int score, TemplateGallery.Entry entry) {
+            this.userId = userId;
+            this.userName = userName;
+            this.score = score;
+            this.entry = entry;
+        }
+
+        public String getUserId() { return userId; }
+        public String getUserName() { return userName; }
+        public int getScore() { return score; }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Integer.compare(o.score, this.score);
+        }
+    }
+
+    private final TemplateMatcher matcher;
+    private final ForkJoinPool pool;
+    // Only a pool the engine created is shut down with it.
+    private final boolean ownsPool;
+    private volatile CandidateIndex candidateIndex;
+    private volatile RecentHits recentHits;
+    // The recall sample in progress, if any. At most one runs at a time, and every new search
+    // cancels it, so it only ever uses the matcher while nobody is waiting to be identified.
+    private final AtomicReference<CancellationToken> recallSample = new AtomicReference<>();
+
+    public IdentificationEngine(TemplateMatcher matcher, int parallelism) {
+        this(matcher, new ForkJoinPool(Math.max(1, parallelism)), true);
+    }
+
+    // Runs on a shared pool, e.g. AppExecutors.matching(), which stays up after shutdown().
+    public IdentificationEngine(TemplateMatcher matcher, ForkJoinPool pool) {
+        this(matcher, pool, false);
+    }
+
+    private IdentificationEngine(TemplateMatcher matcher, ForkJoinPool pool, boolean ownsPool) {
+        this.matcher = matcher;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    public int getParallelism() { return pool.getParallelism(); }
+
+    // When set, only the index's shortlist of the gallery is sent to the matcher.
+    public void setCandidateIndex(CandidateIndex candidateIndex) {
+        this.candidateIndex = candidateIndex;
+    }
+
+    public CandidateIndex getCandidateIndex() { return candidateIndex; }
+
+    // When set, requests with an accept score first try the users identified most often lately,
+    // and only search the rest of the gallery if none of them reaches it.
+    public void setRecentHits(RecentHits recentHits) {
+        this.recentHits = recentHits;
+    }
+
+    public RecentHits getRecentHits() { return recentHits; }
+
+    // The gallery must not change while it is scanned; TemplateGallery snapshots never do.
+    public IdentificationResult identify(IdentificationRequest request, List<TemplateGallery.Entry> gallery) {
+        if (request.hasEarlyAccept() && request.getAcceptScore() <= request.getThreshold()) {
+            throw new IllegalArgumentException("Accept score " + request.getAcceptScore()
+                    + " must be above the threshold " + request.getThreshold());
+        }
+        CancellationToken background = recallSample.get();
+        if (background != null) background.cancel();
+        Limits limits = new Limits(request);
+        if (gallery.isEmpty() || limits.reached()) {
+            return new IdentificationResult(new ArrayList<>(), false, 0, gallery.size(), limits.partial(), limits.cancelled);
+        }
+
+        RecentHits recent = request.hasEarlyAccept() ? recentHits : null;
+        List<TemplateGallery.Entry> hot = recent != null ? recent.getHotEntries() : null;
+        Search first = null;
+        long hotNanos = 0;
+        if (hot != null && !hot.isEmpty()) {
+            long start = System.nanoTime();
+            first = search(request, hot, null, limits);
+            hotNanos = System.nanoTime() - start;
+            if (first.accepted.get() || limits.partial()) {
+                List<Candidate> found = first.best.toSortedList();
+                if (!limits.partial()) recent.recordHit(hotNanos);
+                remember(recent, found, request.getAcceptScore());
+                return new IdentificationResult(found, first.accepted.get(), first.comparisons.get(), gallery.size(),
+                        limits.partial(), limits.cancelled);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<TemplateGallery.Entry> searched = gallery;
+        CandidateIndex index = candidateIndex;
+        boolean sample = false;
+        if (index != null) {
+            searched = index.shortlist(request.getProbe(), gallery);
+            sample = searched != gallery && index.shouldSampleRecall();
+        }
+
+        // The hot entries were already compared; their candidates are merged in below.
+        Set<String> skip = null;
+        if (first != null) {
+            skip = new HashSet<>();
+            for (TemplateGallery.Entry entry : hot) skip.add(entry.getUserId());
+        }
+        Search search = search(request, searched, skip, limits);
+        int comparisons = search.comparisons.get();
+        if (first != null) {
+            search.best.addAll(first.best);
+            comparisons += first.comparisons.get();
+        }
+        List<Candidate> found = search.best.toSortedList();
+
+        // A cut-short search says nothing about recall or what a full search costs.
+        if (sample && !limits.partial()) sampleRecall(index, request, gallery, searched);
+        if (recent != null) {
+            long fullNanos = System.nanoTime() - start;
+            if (!limits.partial()) {
+                if (first != null) recent.recordMiss(hotNanos, fullNanos); else recent.recordFullSearch(fullNanos);
+            }
+            remember(recent, found, request.getAcceptScore());
+        }
+        return new IdentificationResult(found, search.accepted.get(), comparisons, gallery.size(),
+                limits.partial(), limits.cancelled);
+    }
+
+    // Only confident identifications count towards who is tried first.
+    private static void remember(RecentHits recent, List<Candidate> found, int acceptScore) {
+        if (found.isEmpty()) return;
+        Candidate best = found.get(0);
+        if (best.entry != null && best.getScore() >= acceptScore) recent.record(best.entry);
+    }
+
+    // 1:1 against the claimed identity: a single match, on the calling thread. reference is null
+    // when the claimed user does not exist.
+    public VerificationResult verify(byte[] probe, String userId, TemplateGallery.Entry reference, int threshold) {
+        if (reference == null) {
+            return new VerificationResult(userId, null, false, 0, false);
+        }
+        int score = matcher.match(probe, reference.getTemplate());
+        return new VerificationResult(userId, reference.getUserName(), true, score, score > threshold);
+    }
+
+    // Entries whose user ID is in skip (may be null) are not compared.
+    private Search search(IdentificationRequest request, List<TemplateGallery.Entry> entries, Set<String> skip, Limits limits) {
+        int partitions = pool.getParallelism() * PARTITIONS_PER_WORKER;
+        int partitionSize = Math.max(MIN_PARTITION_SIZE, (entries.size() + partitions - 1) / partitions);
+        // Forking a matcher that serializes itself only ties up workers.
+        if (!matcher.isConcurrent()) partitionSize = Math.max(1, entries.size());
+
+        Search search = new Search(request, entries, partitionSize, skip, limits);
+        MatchTask task = new MatchTask(search, 0, entries.size());
+        // Already on one of the pool's workers (a job submitted to the matching pool): fork in place.
+        search.best = ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task);
+        return search;
+    }
+
+    // Re-runs the request over the whole gallery in the background and records whether its best
+    // match was inside the shortlist. Searches with no genuine match say nothing about recall.
+    // Skipped while another sample is running; abandoned as soon as the next search starts.
+    private void sampleRecall(CandidateIndex index, IdentificationRequest request,
+                              List<TemplateGallery.Entry> gallery, List<TemplateGallery.Entry> shortlist) {
+        CancellationToken yield = new CancellationToken();
+        if (!recallSample.compareAndSet(null, yield)) return;
+        pool.execute(() -> {
+            List<Candidate> full;
+            Limits limits;
+            try {
+                // Not held to the request's time budget, but dropped if the request is cancelled.
+                limits = new Limits(request.getCancellationToken(), yield, IdentificationRequest.NO_TIME_BUDGET);
+                full = search(request, gallery, null, limits).best.toSortedList();
+            } finally {
+                recallSample.compareAndSet(yield, null);
+            }
+            if (full.isEmpty() || limits.partial()) return;
+            Candidate best = full.get(0);
+
+            boolean hit = false;
+            for (TemplateGallery.Entry entry : shortlist) {
+                if (entry.getUserId().equals(best.getUserId())) {
+                    hit = true;
+                    break;
+                }
+            }
+            index.recordRecall(hit);
+        });
+    }
+
+    // True once the pool it runs on is shut down, by shutdown() or by the pool's owner.
+    public boolean isShutdown() { return pool.isShutdown(); }
+
+    public void shutdown() {
+        if (ownsPool) pool.shutdownNow();
+    }
+
+    // When a search has to stop short of the whole gallery. Checked between comparisons, so a
+    // stop takes effect within one match per worker.
+    private static class Limits {
+        final CancellationToken token;
+        final CancellationToken yield;
+        final long deadline;
+        final boolean hasDeadline;
+        volatile boolean cancelled;
+        volatile boolean timedOut;
+
+        Limits(IdentificationRequest request) {
+            this(request.getCancellationToken(), null, request.getTimeBudgetMs());
+        }
+
+        // Either token (both may be null) stops the search.
+        Limits(CancellationToken token, CancellationToken yield, long budgetMs) {
+            this.token = token;
+            this.yield = yield;
+            this.hasDeadline = budgetMs > IdentificationRequest.NO_TIME_BUDGET;
+            this.deadline = hasDeadline ? System.nanoTime() + budgetMs * 1_000_000L : 0;
+        }
+
+        boolean reached() {
+            if (cancelled || timedOut) return true;
+            if ((token != null && token.isCancelled()) || (yield != null && yield.isCancelled())) {
+                cancelled = true;
+            } else if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                timedOut = true;
+            }
+            return cancelled || timedOut;
+        }
+
+        boolean partial() { return cancelled || timedOut; }
+    }
+
+    private static class Search {
+        final IdentificationRequest request;
+        final List<TemplateGallery.Entry> gallery;
+        final int partitionSize;
+        final Set<String> skip;
+        final Limits limits;
+        final AtomicBoolean accepted = new AtomicBoolean();
+        final AtomicInteger comparisons = new AtomicInteger();
+        TopKCandidates best;
+
+        Search(IdentificationRequest request, List<TemplateGallery.Entry> gallery, int partitionSize,
+               Set<String> skip, Limits limits) {
+            this.request = request;
+            this.gallery = gallery;
+            this.partitionSize = partitionSize;
+            this.skip = skip;
+            this.limits = limits;
+        }
+    }
+
+    private class MatchTask extends RecursiveTask<TopKCandidates> {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final int from, to;
+
+        MatchTask(Search search, int from, int to) {
+            this.search = search;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopKCandidates compute() {
+            if (to - from <= search.partitionSize) {
+                return scan();
+            }
+
+            int mid = (from + to) >>> 1;
+            MatchTask left = new MatchTask(search, from, mid);
+            MatchTask right = new MatchTask(search, mid, to);
+            left.fork();
+            TopKCandidates merged = right.compute();
+            merged.addAll(left.join());
+            return merged;
+        }
+
+        private TopKCandidates scan() {
+            IdentificationRequest request = search.request;
+            TopKCandidates found = new TopKCandidates(request.getTopK());
+            byte[] probe = request.getProbe();
+            Set<String> skip = search.skip;
+            Limits limits = search.limits;
+            int scanned = 0;
+
+            for (int i = from; i < to && !search.accepted.get() && !limits.reached(); i++) {
+                TemplateGallery.Entry entry = search.gallery.get(i);
+                if (skip != null && skip.contains(entry.getUserId())) continue;
+                int score = matcher.match(probe, entry.getTemplate());
+                scanned++;
+
+                if (score > request.getThreshold() && found.accepts(score)) {
+                    found.offer(new Candidate(entry, score));
+                }
+                if (request.hasEarlyAccept() && score >= request.getAcceptScore()) {
+                    search.accepted.set(true);
+                }
+            }
+
+            search.comparisons.addAndGet(scanned);
+            return found;
+        }
+    }
+}
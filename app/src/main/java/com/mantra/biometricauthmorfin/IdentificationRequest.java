@@ -0,0 +1,59 @@
+package com.mantra.biometricauthmorfin;
+
+public class IdentificationRequest {
+
+    public static final int UNLIMITED = 0;
+    public static final int NO_EARLY_ACCEPT = 0;
+    public static final long NO_TIME_BUDGET = 0;
+
+    private final byte[] probe;
+    private int threshold = 400;
+    private int topK = UNLIMITED;
+    private int acceptScore = NO_EARLY_ACCEPT;
+    private long timeBudgetMs = NO_TIME_BUDGET;
+    private CancellationToken cancellationToken;
+
+    public IdentificationRequest(byte[] probe) {
+        this.probe = probe;
+    }
+
+    public IdentificationRequest setThreshold(int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    // Keep only the K best candidates instead of everything above the threshold.
+    public IdentificationRequest setTopK(int topK) {
+        this.topK = topK;
+        return this;
+    }
+
+    // Stop scanning the gallery as soon as any candidate reaches this score. Must be above the
+    // threshold, so whatever stops the scan is also returned as a candidate.
+    public IdentificationRequest setAcceptScore(int acceptScore) {
+        this.acceptScore = acceptScore;
+        return this;
+    }
+
+    // Give up after this long and return the best candidates found so far, marked partial.
+    public IdentificationRequest setTimeBudgetMs(long timeBudgetMs) {
+        this.timeBudgetMs = timeBudgetMs;
+        return this;
+    }
+
+    // Once cancelled, the search stops and returns what it has, marked partial and cancelled.
+    public IdentificationRequest setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+    public byte[] getProbe() { return probe; }
+    public int getThreshold() { return threshold; }
+    public int getTopK() { return topK; }
+    public int getAcceptScore() { return acceptScore; }
+    public long getTimeBudgetMs() { return timeBudgetMs; }
+    public CancellationToken getCancellationToken() { return cancellationToken; }
+
+    public boolean hasEarlyAccept() { return acceptScore > NO_EARLY_ACCEPT; }
+    public boolean hasTimeBudget() { return timeBudgetMs > NO_TIME_BUDGET; }
+}
@@ -0,0 +1,46 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.List;
+
+public class IdentificationResult {
+
+    private final List<IdentificationEngine.Candidate> candidates;
+    private final boolean accepted;
+    private final int comparisons;
+    private final int gallerySize;
+    private final boolean partial;
+    private final boolean cancelled;
+
+    public IdentificationResult(List<IdentificationEngine.Candidate> candidates, boolean accepted,
+                                int comparisons, int gallerySize) {
+        this(candidates, accepted, comparisons, gallerySize, false, false);
+    }
+
+    public IdentificationResult(List<IdentificationEngine.Candidate> candidates, boolean accepted,
+                                int comparisons, int gallerySize, boolean partial, boolean cancelled) {
+        this.candidates = candidates;
+        this.accepted = accepted;
+        this.comparisons = comparisons;
+        this.gallerySize = gallerySize;
+        this.partial = partial;
+        this.cancelled = cancelled;
+    }
+
+    // Best first.
+    public List<IdentificationEngine.Candidate> getCandidates() { return candidates; }
+
+    public IdentificationEngine.Candidate getBest() {
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    // True when the scan stopped early on a candidate above the accept score.
+    public boolean isAccepted() { return accepted; }
+
+    // True when the time budget ran out or the search was cancelled before it was done; the
+    // candidates are the best of what was compared.
+    public boolean isPartial() { return partial; }
+    public boolean isCancelled() { return cancelled; }
+
+    public int getComparisons() { return comparisons; }
+    public int getGallerySize() { return gallerySize; }
+}
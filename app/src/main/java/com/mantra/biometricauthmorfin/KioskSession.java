@@ -0,0 +1,88 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+// Bookkeeping for continuous (hands-free) identification: tells a finger that is still resting on
+// the sensor apart from a new presentation, and keeps the identification rate. Times are in
+// milliseconds from any monotonic clock.
+public class KioskSession {
+
+    // A capture matching the previous one this soon after it is the same finger, not a new visit.
+    public static final long DEFAULT_HOLD_MS = 2000;
+    public static final int DEFAULT_SAME_FINGER_SCORE = 600;
+
+    private static final long RATE_WINDOW_MS = 60_000;
+
+    private final TemplateMatcher matcher;
+    private final long holdMs;
+    private final int sameFingerScore;
+    private final long startedAt;
+
+    // Guarded by this.
+    private byte[] lastProbe;
+    private long lastSeenAt;
+    private long identifications;
+    private long matches;
+    private long repeats;
+    private final ArrayDeque<Long> recent = new ArrayDeque<>();
+
+    public KioskSession(TemplateMatcher matcher, long holdMs, int sameFingerScore, long nowMs) {
+        this.matcher = matcher;
+        this.holdMs = holdMs;
+        this.sameFingerScore = sameFingerScore;
+        this.startedAt = nowMs;
+    }
+
+    // True if the probe is the finger from the previous capture, seen again within the hold time.
+    // Each repeat extends the hold, so a finger left on the sensor is only identified once. Costs
+    // one 1:1 comparison instead of a gallery search; call where the matcher may be used.
+    public boolean isRepeat(byte[] probe, long nowMs) {
+        byte[] previous;
+        synchronized (this) {
+            previous = nowMs - lastSeenAt <= holdMs ? lastProbe : null;
+        }
+        boolean repeat = previous != null && matcher.match(probe, previous) >= sameFingerScore;
+        synchronized (this) {
+            lastSeenAt = nowMs;
+            if (repeat) {
+                repeats++;
+            } else {
+                lastProbe = probe;
+            }
+        }
+        return repeat;
+    }
+
+    public synchronized void recordIdentification(boolean matched, long nowMs) {
+        identifications++;
+        if (matched) matches++;
+        recent.addLast(nowMs);
+        trim(nowMs);
+    }
+
+    public synchronized long getIdentifications() { return identifications; }
+    public synchronized long getMatches() { return matches; }
+    public synchronized long getRepeats() { return repeats; }
+
+    // Over the last minute, or since the start if that is shorter.
+    public synchronized double getPerMinute(long nowMs) {
+        trim(nowMs);
+        long span = Math.min(RATE_WINDOW_MS, nowMs - startedAt);
+        return recent.size() * 60_000.0 / Math.max(span, 1000);
+    }
+
+    // Since the start.
+    public synchronized double getSustainedPerMinute(long nowMs) {
+        return identifications * 60_000.0 / Math.max(nowMs - startedAt, 1000);
+    }
+
+    public synchronized String getSummary(long nowMs) {
+        return String.format(Locale.US, "%d identified (%d matched, %d repeats skipped), %.1f/min now, %.1f/min overall",
+                identifications, matches, repeats, getPerMinute(nowMs), getSustainedPerMinute(nowMs));
+    }
+
+    private void trim(long nowMs) {
+        while (!recent.isEmpty() && nowMs - recent.peekFirst() > RATE_WINDOW_MS) recent.pollFirst();
+    }
+}
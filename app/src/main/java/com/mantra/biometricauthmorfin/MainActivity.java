@@ -44,7 +44,7 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
             return insets;
         });
 
-        dbHelper = new FingerprintDatabaseHelper(this);
+        dbHelper = FingerprintDatabaseHelper.getInstance(this);
         bioManager = BiometricManager.getInstance(this);
 
         initViews();
@@ -127,7 +127,7 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
 
             if (pendingModel != null) {
                 txtBottomMessage.setText("Initializing...");
-                new Thread(() -> {
+                bioManager.runOnDeviceThread(() -> {
                     DeviceInfo info = new DeviceInfo();
                     bioManager.initDevice(pendingModel, info);
 
@@ -141,7 +141,7 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
                             txtBottomMessage.setText("Initialization Failed.");
                         }
                     });
-                }).start();
+                });
             } else {
                 Toast.makeText(this, "Connect device first", Toast.LENGTH_SHORT).show();
             }
@@ -149,7 +149,7 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
 
 
         btnUninitDevice.setOnClickListener(v -> {
-            new Thread(() -> {
+            bioManager.runOnDeviceThread(() -> {
                 bioManager.uninitDevice();
                 runOnUiThread(() -> {
                     // Update UI to "Connected but Uninitialized" state
@@ -161,7 +161,7 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
 
                     Toast.makeText(this, "Device Uninitialized", Toast.LENGTH_SHORT).show();
                 });
-            }).start();
+            });
         });
 
 
@@ -244,6 +244,13 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
         imgHeaderStatus.setColorFilter(color);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Leaving the app: queued database and image writes still complete before the threads exit.
+        if (isFinishing()) AppExecutors.getInstance().shutdown();
+    }
+
     private void fillDeviceDetails(DeviceInfo info) {
         if (info == null) return;
         String details = String.format("Make: %s\nModel: %s\nSerial: %s\nW/H: %d x %d",
@@ -252,7 +259,10 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
     }
 
     private void refreshUserCount() {
-        txtTotalUsers.setText("Registered Users: " + dbHelper.getUserCount());
+        AppExecutors.getInstance().io().execute(() -> {
+            int count = dbHelper.getUserCount();
+            runOnUiThread(() -> txtTotalUsers.setText("Registered Users: " + count));
+        });
     }
 
     private void showDeleteOptionsDialog() {
@@ -267,21 +277,26 @@ public class MainActivity extends AppCompatActivity implements MorfinAuth_Callba
                 })
                 .setPositiveButton("DELETE", (dialog, which) -> {
                     String path = getExternalFilesDir(null).getAbsolutePath() + "/FingerData";
-                    switch (selectedDeleteOption) {
-                        case 0:
-                            dbHelper.clearDatabase();
-                            Toast.makeText(this, "Database Cleared", Toast.LENGTH_SHORT).show();
-                            break;
-                        case 1:
-                            dbHelper.clearSavedFiles(path);
-                            Toast.makeText(this, "Images Deleted", Toast.LENGTH_SHORT).show();
-                            break;
-                        case 2:
-                            dbHelper.clearAllData(path);
-                            Toast.makeText(this, "Full Wipe Complete", Toast.LENGTH_SHORT).show();
-                            break;
-                    }
-                    refreshUserCount();
+                    int option = selectedDeleteOption;
+                    AppExecutors.getInstance().io().execute(() -> {
+                        String done;
+                        switch (option) {
+                            case 0:
+                                dbHelper.clearDatabase();
+                                done = "Database Cleared";
+                                break;
+                            case 1:
+                                dbHelper.clearSavedFiles(path);
+                                done = "Images Deleted";
+                                break;
+                            default:
+                                dbHelper.clearAllData(path);
+                                done = "Full Wipe Complete";
+                                break;
+                        }
+                        runOnUiThread(() -> Toast.makeText(this, done, Toast.LENGTH_SHORT).show());
+                        refreshUserCount();
+                    });
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
@@ -1,12 +1,12 @@
 package com.mantra.biometricauthmorfin;
 
 import android.content.res.ColorStateList;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -20,24 +20,52 @@ import com.mantra.morfinauth.MorfinAuth_Callback;
 import com.mantra.morfinauth.enums.DeviceDetection;
 import com.mantra.morfinauth.enums.TemplateFormat;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callback {
 
     private ImageView imgMatchPreview, btnBack;
     private TextView txtMatchStatus;
-    private Button btnStartMatch;
+    private Button btnStartMatch, btnKiosk, btnVerify;
     private RecyclerView recyclerMatches;
 
     private BiometricManager bioManager;
     private FingerprintDatabaseHelper dbHelper;
+    private PreviewDecoder previewDecoder;
 
     private boolean isCapturing = false;
+    // Continuous mode: captures follow each other on the device thread until stopped.
+    private volatile boolean kioskRunning = false;
+    private volatile KioskSession kiosk;
+    // Cancelled when the attempt it belongs to is stopped or the screen goes away; a fresh one per attempt.
+    private volatile CancellationToken searchToken = new CancellationToken();
+    // The attempt whose search is running on the matching pool, if any. Stopping it does not give
+    // the buttons back until the search has let go of the SDK.
+    private volatile CancellationToken searching;
     private int minQuality = 60;
     private int timeOut = 10000;
 
+    private static final int MATCH_THRESHOLD = 400;
+    private static final int MAX_RESULTS = 10;
+    private static final int ACCEPT_SCORE = 800;
+    // Back-off after a capture error in continuous mode, so a failing sensor is not hammered.
+    private static final long KIOSK_ERROR_BACKOFF_MS = 500;
+    // Past this a search settles for the best candidates it has compared so far.
+    private static final long SEARCH_BUDGET_MS = 3000;
+
+    private static final StageTimings.Stage CAPTURE = StageTimings.getInstance().stage("match.capture");
+    private static final StageTimings.Stage TEMPLATE = StageTimings.getInstance().stage("match.template");
+    private static final StageTimings.Stage GALLERY = StageTimings.getInstance().stage("match.gallery");
+    private static final StageTimings.Stage SEARCH = StageTimings.getInstance().stage("match.search");
+    private static final StageTimings.Stage RENDER = StageTimings.getInstance().stage("match.render");
+    private static final StageTimings.Stage TOTAL = StageTimings.getInstance().stage("match.total");
+    private static final StageTimings.Stage VERIFY_LOOKUP = StageTimings.getInstance().stage("verify.lookup");
+    private static final StageTimings.Stage VERIFY_MATCH = StageTimings.getInstance().stage("verify.match");
+    private static final StageTimings.Stage VERIFY_TOTAL = StageTimings.getInstance().stage("verify.total");
+
     private List<MatchedUser> currentMatches = new ArrayList<>();
 
     public static class MatchedUser implements Comparable<MatchedUser> {
@@ -63,9 +91,17 @@ public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callb
         setContentView(R.layout.activity_match);
 
         bioManager = BiometricManager.getInstance(this);
-        dbHelper = new FingerprintDatabaseHelper(this);
+        dbHelper = FingerprintDatabaseHelper.getInstance(this);
 
         initViews();
+        previewDecoder = new PreviewDecoder((bitmap, quality) -> {
+            imgMatchPreview.setImageTintList(null);
+            imgMatchPreview.clearColorFilter();
+            imgMatchPreview.setImageBitmap(bitmap);
+        });
+
+        // Warm the gallery while the user is still placing a finger.
+        AppExecutors.getInstance().io().execute(() -> dbHelper.getTemplateGallery());
     }
 
     private void initViews() {
@@ -73,6 +109,8 @@ public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callb
         btnBack = findViewById(R.id.btnBack);
         txtMatchStatus = findViewById(R.id.txtMatchStatus);
         btnStartMatch = findViewById(R.id.btnStartMatch);
+        btnKiosk = findViewById(R.id.btnKiosk);
+        btnVerify = findViewById(R.id.btnVerify);
         recyclerMatches = findViewById(R.id.recyclerMatches);
 
         recyclerMatches.setLayoutManager(new LinearLayoutManager(this));
@@ -82,12 +120,25 @@ public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callb
         btnStartMatch.setOnClickListener(v -> {
             if (!isCapturing) startCapture();
         });
+
+        btnVerify.setOnClickListener(v -> {
+            if (!isCapturing) showVerifyDialog();
+        });
+
+        btnKiosk.setOnClickListener(v -> {
+            if (kioskRunning) {
+                stopCapture();
+            } else if (!isCapturing) {
+                startKiosk();
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         bioManager.setListener(this);
+        previewDecoder.start();
         if (!bioManager.isReady()) {
             Toast.makeText(this, "Device not ready", Toast.LENGTH_SHORT).show();
             finish();
@@ -99,11 +150,61 @@ public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callb
         super.onPause();
         stopCapture();
         bioManager.removeListener();
+        previewDecoder.stop();
+        bioManager.dumpStageTimings(new File(getExternalFilesDir(null), StageTimings.FILE_NAME));
+        Log.i("Timings", dbHelper.getTemplateCacheStats());
+        Log.i("Timings", bioManager.getIdentificationEngine().getRecentHits().getStats());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // onPause has normally done this already; a search still running is abandoned either way.
+        kioskRunning = false;
+        searchToken.cancel();
+    }
+
+    // Background results land here; dropped once the screen is going away, so nothing touches the
+    // views of a finished activity.
+    private void runOnUiThreadIfAlive(Runnable action) {
+        runOnUiThread(() -> {
+            if (isFinishing() || isDestroyed()) return;
+            action.run();
+        });
+    }
+
+    // Like runOnUiThreadIfAlive, but dropped once the attempt has been stopped or replaced, so a
+    // late result never overwrites the screen.
+    private void publish(CancellationToken token, Runnable action) {
+        runOnUiThreadIfAlive(() -> {
+            if (token.isCancelled() || token != searchToken) return;
+            action.run();
+        });
+    }
+
+    private void runSearch(CancellationToken token, Runnable search) {
+        AppExecutors.getInstance().matching().execute(() -> {
+            searching = token;
+            try {
+                search.run();
+            } finally {
+                searching = null;
+                if (token.isCancelled()) {
+                    runOnUiThreadIfAlive(() -> {
+                        if (token == searchToken && isCapturing) resetUI();
+                    });
+                }
+            }
+        });
     }
 
     private void startCapture() {
         isCapturing = true;
+        CancellationToken token = new CancellationToken();
+        searchToken = token;
         btnStartMatch.setEnabled(false);
+        btnKiosk.setEnabled(false);
+        btnVerify.setEnabled(false);
         txtMatchStatus.setText("Place Finger...");
 
         currentMatches.clear();
@@ -112,145 +213,370 @@ public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callb
         imgMatchPreview.setImageResource(android.R.drawable.ic_menu_gallery);
         imgMatchPreview.setImageTintList(ColorStateList.valueOf(Color.LTGRAY));
 
-        new Thread(() -> {
-            bioManager.getSDK().StopCapture();
-            try { Thread.sleep(200); } catch (Exception e){}
-
+        bioManager.runOnDeviceThread(() -> {
             int[] qty = new int[1];
             int[] nfiq = new int[1];
 
-            int ret = bioManager.getSDK().AutoCapture(minQuality, timeOut, qty, nfiq);
+            long captureStart = System.nanoTime();
+            int ret = bioManager.autoCapture(minQuality, timeOut, qty, nfiq);
 
             if (ret == 0) {
-                runOnUiThread(() -> {
+                CAPTURE.lap(captureStart);
+                publish(token, () -> {
                     txtMatchStatus.setText("Processing Matches...");
-                    processMatch(qty[0]);
+                    processMatch(qty[0], captureStart, token);
                 });
             } else {
-                runOnUiThread(() -> {
+                publish(token, () -> {
                     txtMatchStatus.setText("Capture Failed: " + ret);
                     resetUI();
                 });
             }
-        }).start();
+        });
     }
 
     private void stopCapture() {
-        if (isCapturing) {
-            new Thread(() -> bioManager.getSDK().StopCapture()).start();
-            isCapturing = false;
+        CancellationToken token = searchToken;
+        token.cancel();
+        if (kioskRunning) {
+            kioskRunning = false;
+            Log.i("Kiosk", kiosk.getSummary(SystemClock.elapsedRealtime()));
+            txtMatchStatus.setText("Kiosk Stopped");
+        } else if (isCapturing) {
+            txtMatchStatus.setText("Stopped");
         }
+        // A search still running hands the buttons back itself (see runSearch) once it returns.
+        if (isCapturing && searching != token) resetUI();
+        bioManager.stopCapture();
     }
 
-    private void processMatch(int quality) {
-        new Thread(() -> {
-            Cursor cursor = null;
-            try {
+    // Hands-free identification: the sensor stays initialized and capturing, each capture goes
+    // straight to the matcher, and a finger left on the sensor is only identified once. The next
+    // capture waits for the match, so there is never more than one identification in flight and
+    // the SDK is never capturing and matching at the same time.
+    private void startKiosk() {
+        isCapturing = true;
+        kioskRunning = true;
+        CancellationToken token = new CancellationToken();
+        searchToken = token;
+        KioskSession session = new KioskSession(new SdkTemplateMatcher(bioManager.getDevice()),
+                KioskSession.DEFAULT_HOLD_MS, KioskSession.DEFAULT_SAME_FINGER_SCORE, SystemClock.elapsedRealtime());
+        kiosk = session;
 
-                byte[] tempBuffer = new byte[2048];
-                int[] tSize = new int[1];
-                int ret = bioManager.getSDK().GetTemplate(tempBuffer, tSize, TemplateFormat.FMR_V2011);
+        btnStartMatch.setEnabled(false);
+        btnVerify.setEnabled(false);
+        btnKiosk.setText("Stop Kiosk Mode");
+        txtMatchStatus.setText("Kiosk: Place Finger...");
+        txtMatchStatus.setTextColor(Color.parseColor("#333333"));
+        currentMatches.clear();
+        recyclerMatches.setAdapter(null);
 
-                if (ret != 0) {
-                    runOnUiThread(() -> {
-                        txtMatchStatus.setText("Template Extraction Failed");
-                        resetUI();
-                    });
-                    return;
-                }
+        bioManager.runOnDeviceThread(() -> kioskStep(session, token));
+    }
 
-                byte[] capturedTemplate = new byte[tSize[0]];
-                System.arraycopy(tempBuffer, 0, capturedTemplate, 0, tSize[0]);
+    // One capture per device-thread command, re-queued, so other SDK calls can still get in between.
+    private void kioskStep(KioskSession session, CancellationToken token) {
+        if (!kioskRunning || session != kiosk) return;
+
+        int[] qty = new int[1];
+        int[] nfiq = new int[1];
+        long captureStart = System.nanoTime();
+        int ret = bioManager.autoCapture(minQuality, timeOut, qty, nfiq);
+        if (!kioskRunning || session != kiosk) return;
+
+        if (ret == 0) {
+            CAPTURE.lap(captureStart);
+            long t = System.nanoTime();
+            byte[] probe = null;
+            try (CaptureBufferPool.Lease template = bioManager.getCaptureBuffers().acquireTemplate()) {
+                if (bioManager.getDevice().getTemplate(template.array(), template.lengthOut(), TemplateFormat.FMR_V2011) == 0) {
+                    probe = template.toByteArray();
+                }
+            }
+            TEMPLATE.lap(t);
 
+            if (probe == null) {
+                runOnUiThreadIfAlive(() -> txtMatchStatus.setText("Kiosk: Template Failed, Place Again..."));
+            } else if (session.isRepeat(probe, SystemClock.elapsedRealtime())) {
+                runOnUiThreadIfAlive(() -> {
+                    if (kioskRunning) txtMatchStatus.setText("Kiosk: Lift Finger...");
+                });
+            } else {
+                byte[] finalProbe = probe;
+                runSearch(token, () -> {
+                    try {
+                        identify(finalProbe, captureStart, session, token);
+                    } finally {
+                        bioManager.runOnDeviceThread(() -> kioskStep(session, token));
+                    }
+                });
+                return;
+            }
+        } else if (ret != -2019) {
+            // A timeout just means nobody came; anything else is shown and retried.
+            runOnUiThreadIfAlive(() -> {
+                if (kioskRunning) txtMatchStatus.setText("Kiosk: Capture Failed (" + ret + "), Retrying...");
+            });
+            try {
+                Thread.sleep(KIOSK_ERROR_BACKOFF_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        bioManager.runOnDeviceThread(() -> kioskStep(session, token));
+    }
 
-                cursor = dbHelper.getUsersCursor();
+    // 1:1 against a claimed identity (badge, PIN): one match instead of a gallery search.
+    private void showVerifyDialog() {
+        EditText input = new EditText(this);
+        input.setHint("User ID or number");
+        input.setSingleLine(true);
 
-                if (cursor == null || cursor.getCount() == 0) {
-                    runOnUiThread(() -> {
-                        txtMatchStatus.setText("Database is Empty");
-                        resetUI();
-                    });
-                    return;
-                }
+        new AlertDialog.Builder(this)
+                .setTitle("Verify User")
+                .setView(input)
+                .setPositiveButton("Verify", (dialog, which) -> {
+                    String userId = FingerprintDatabaseHelper.toUserId(input.getText().toString());
+                    if (userId.isEmpty()) {
+                        Toast.makeText(this, "Enter a user ID", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    startVerification(userId);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
-                List<MatchedUser> foundMatches = new ArrayList<>();
-                int threshold = 400;
+    private void startVerification(String userId) {
+        isCapturing = true;
+        CancellationToken token = new CancellationToken();
+        searchToken = token;
+        btnStartMatch.setEnabled(false);
+        btnKiosk.setEnabled(false);
+        btnVerify.setEnabled(false);
+        txtMatchStatus.setText("Verify " + userId + ": Place Finger...");
+        txtMatchStatus.setTextColor(Color.parseColor("#333333"));
 
+        currentMatches.clear();
+        recyclerMatches.setAdapter(null);
 
-                int idxId = cursor.getColumnIndex(FingerprintDatabaseHelper.COL_USER_ID);
-                int idxName = cursor.getColumnIndex(FingerprintDatabaseHelper.COL_USER_NAME);
-                int idxTemplate = cursor.getColumnIndex(FingerprintDatabaseHelper.COL_TEMPLATE);
+        imgMatchPreview.setImageResource(android.R.drawable.ic_menu_gallery);
+        imgMatchPreview.setImageTintList(ColorStateList.valueOf(Color.LTGRAY));
 
+        // Fetched while the finger is being placed, so the match does not wait on the database.
+        AppExecutors.getInstance().io().execute(() -> dbHelper.getVerificationEntry(userId));
 
-                while (cursor.moveToNext()) {
-                    String userId = cursor.getString(idxId);
-                    String userName = cursor.getString(idxName);
-                    byte[] dbTemplate = cursor.getBlob(idxTemplate);
+        bioManager.runOnDeviceThread(() -> {
+            int[] qty = new int[1];
+            int[] nfiq = new int[1];
 
-                    int[] score = new int[1];
-                    int matchRet = bioManager.getSDK().MatchTemplate(capturedTemplate, dbTemplate, score, TemplateFormat.FMR_V2011);
+            long captureStart = System.nanoTime();
+            int ret = bioManager.autoCapture(minQuality, timeOut, qty, nfiq);
+            if (ret != 0) {
+                publish(token, () -> {
+                    txtMatchStatus.setText("Capture Failed: " + ret);
+                    resetUI();
+                });
+                return;
+            }
+            CAPTURE.lap(captureStart);
 
-                    if (matchRet == 0 && score[0] > threshold) {
-                        foundMatches.add(new MatchedUser(userName, userId, score[0]));
-                    }
+            long t = System.nanoTime();
+            byte[] probe = null;
+            try (CaptureBufferPool.Lease template = bioManager.getCaptureBuffers().acquireTemplate()) {
+                if (bioManager.getDevice().getTemplate(template.array(), template.lengthOut(), TemplateFormat.FMR_V2011) == 0) {
+                    probe = template.toByteArray();
                 }
+            }
+            TEMPLATE.lap(t);
 
-                Collections.sort(foundMatches);
-                currentMatches = foundMatches;
-
-                runOnUiThread(() -> {
-                    if (!currentMatches.isEmpty()) {
-                        txtMatchStatus.setText("Found " + currentMatches.size() + " Matches");
-                        txtMatchStatus.setTextColor(Color.parseColor("#4CAF50"));
-
-                        MatchResultAdapter adapter = new MatchResultAdapter(currentMatches, this::showDeleteDialog);
-                        recyclerMatches.setAdapter(adapter);
-                    } else {
-                        txtMatchStatus.setText("No Matches Found");
-                        txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
-                    }
+            if (probe == null) {
+                publish(token, () -> {
+                    txtMatchStatus.setText("Template Extraction Failed");
                     resetUI();
                 });
+                return;
+            }
+            byte[] finalProbe = probe;
+            runSearch(token, () -> verify(userId, finalProbe, captureStart, token));
+        });
+    }
+
+    private void verify(String userId, byte[] probe, long captureStart, CancellationToken token) {
+        if (token.isCancelled()) return;
+        try {
+            long t = System.nanoTime();
+            TemplateGallery.Entry reference = dbHelper.getVerificationEntry(userId);
+            t = VERIFY_LOOKUP.lap(t);
+            VerificationResult result = bioManager.getIdentificationEngine().verify(probe, userId, reference, MATCH_THRESHOLD);
+            VERIFY_MATCH.lap(t);
+
+            publish(token, () -> {
+                if (!result.isEnrolled()) {
+                    txtMatchStatus.setText("No Such User: " + userId);
+                    txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
+                } else if (result.isVerified()) {
+                    txtMatchStatus.setText("Verified: " + result.getUserName() + " (" + userId + ")");
+                    txtMatchStatus.setTextColor(Color.parseColor("#4CAF50"));
+
+                    currentMatches = new ArrayList<>();
+                    currentMatches.add(new MatchedUser(result.getUserName(), userId, result.getScore()));
+                    recyclerMatches.setAdapter(new MatchResultAdapter(currentMatches, this::showDeleteDialog));
+                } else {
+                    txtMatchStatus.setText("Not Verified: " + userId + " (Score " + result.getScore() + ")");
+                    txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
+                }
+                resetUI();
+                VERIFY_TOTAL.lap(captureStart);
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            publish(token, this::resetUI);
+        }
+    }
 
+    private void processMatch(int quality, long captureStart, CancellationToken token) {
+        bioManager.runOnDeviceThread(() -> {
+            if (token.isCancelled()) return;
+            try {
+                long t = System.nanoTime();
+                // The probe outlives this method (recall sampling reads it later), so it is copied out.
+                byte[] capturedTemplate;
+                try (CaptureBufferPool.Lease template = bioManager.getCaptureBuffers().acquireTemplate()) {
+                    int ret = bioManager.getDevice().getTemplate(template.array(), template.lengthOut(), TemplateFormat.FMR_V2011);
+
+                    if (ret != 0) {
+                        publish(token, () -> {
+                            txtMatchStatus.setText("Template Extraction Failed");
+                            resetUI();
+                        });
+                        return;
+                    }
+                    capturedTemplate = template.toByteArray();
+                }
+                TEMPLATE.lap(t);
+                // The search itself runs on the matching pool, which it then forks across.
+                runSearch(token, () -> identify(capturedTemplate, captureStart, null, token));
             } catch (Exception e) {
                 e.printStackTrace();
-                runOnUiThread(this::resetUI);
-            } finally {
+                publish(token, this::resetUI);
+            }
+        });
+    }
 
-                if (cursor != null) {
-                    cursor.close();
-                }
+    // session is null for a single attempt.
+    private void identify(byte[] capturedTemplate, long captureStart, KioskSession session, CancellationToken token) {
+        if (token.isCancelled()) return;
+        try {
+            long t = System.nanoTime();
+            List<TemplateGallery.Entry> gallery = dbHelper.getTemplateGallery();
+            t = GALLERY.lap(t);
+
+            if (gallery.isEmpty()) {
+                publish(token, () -> {
+                    txtMatchStatus.setText("Database is Empty");
+                    if (session == null) resetUI();
+                });
+                return;
+            }
+
+            IdentificationRequest request = new IdentificationRequest(capturedTemplate)
+                    .setThreshold(MATCH_THRESHOLD)
+                    .setTopK(MAX_RESULTS)
+                    .setAcceptScore(ACCEPT_SCORE)
+                    .setTimeBudgetMs(SEARCH_BUDGET_MS)
+                    .setCancellationToken(token);
+            IdentificationResult result = bioManager.getIdentificationEngine().identify(request, gallery);
+            long searched = SEARCH.lap(t);
+            // Whoever cancelled it has already moved on.
+            if (result.isCancelled()) return;
+            boolean partial = result.isPartial();
+
+            List<MatchedUser> foundMatches = new ArrayList<>();
+            for (IdentificationEngine.Candidate candidate : result.getCandidates()) {
+                foundMatches.add(new MatchedUser(candidate.getUserName(), candidate.getUserId(), candidate.getScore()));
+            }
+
+            if (session != null) {
+                session.recordIdentification(!foundMatches.isEmpty(), SystemClock.elapsedRealtime());
+                runOnUiThreadIfAlive(() -> showKioskResult(session, foundMatches, partial, searched, captureStart));
+                return;
             }
-        }).start();
+
+            publish(token, () -> {
+                currentMatches = foundMatches;
+                if (!currentMatches.isEmpty()) {
+                    txtMatchStatus.setText((partial ? "Search Timed Out, Best So Far: " : "Found ") + currentMatches.size() + " Matches");
+                    txtMatchStatus.setTextColor(Color.parseColor("#4CAF50"));
+
+                    MatchResultAdapter adapter = new MatchResultAdapter(currentMatches, this::showDeleteDialog);
+                    recyclerMatches.setAdapter(adapter);
+                } else {
+                    txtMatchStatus.setText(partial ? "Search Timed Out, No Matches So Far" : "No Matches Found");
+                    txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
+                }
+                resetUI();
+                RENDER.lap(searched);
+                TOTAL.lap(captureStart);
+            });
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (session == null) publish(token, this::resetUI);
+        }
+    }
+
+    private void showKioskResult(KioskSession session, List<MatchedUser> found, boolean partial, long searched, long captureStart) {
+        // A late result from a session that has since been stopped.
+        if (!kioskRunning || session != kiosk) return;
+
+        String rate = session.getIdentifications() + " identified, "
+                + String.format(Locale.US, "%.1f", session.getPerMinute(SystemClock.elapsedRealtime())) + "/min"
+                + (partial ? " (search timed out)" : "");
+        if (!found.isEmpty()) {
+            MatchedUser best = found.get(0);
+            txtMatchStatus.setText("Welcome " + best.name + " (" + best.id + ")\n" + rate);
+            txtMatchStatus.setTextColor(Color.parseColor("#4CAF50"));
+        } else {
+            txtMatchStatus.setText("Not Recognized\n" + rate);
+            txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
+        }
+        currentMatches = found;
+        recyclerMatches.setAdapter(new MatchResultAdapter(currentMatches, this::showDeleteDialog));
+        RENDER.lap(searched);
+        TOTAL.lap(captureStart);
     }
 
     private void showDeleteDialog(MatchedUser user) {
         new AlertDialog.Builder(this)
                 .setTitle("Delete User")
                 .setMessage("Do you want to delete " + user.name + " (" + user.id + ")?")
-                .setPositiveButton("Delete", (dialog, which) -> {
+                .setPositiveButton("Delete", (dialog, which) -> AppExecutors.getInstance().io().execute(() -> {
                     boolean deleted = dbHelper.deleteUser(user.id);
-                    if (deleted) {
-                        Toast.makeText(this, "Deleted: " + user.name, Toast.LENGTH_SHORT).show();
+                    runOnUiThreadIfAlive(() -> {
+                        if (deleted) {
+                            Toast.makeText(this, "Deleted: " + user.name, Toast.LENGTH_SHORT).show();
 
-                        currentMatches.remove(user);
+                            currentMatches.remove(user);
 
-                        if (recyclerMatches.getAdapter() != null) {
-                            recyclerMatches.getAdapter().notifyDataSetChanged();
-                        }
+                            if (recyclerMatches.getAdapter() != null) {
+                                recyclerMatches.getAdapter().notifyDataSetChanged();
+                            }
+
+                            if (currentMatches.isEmpty()) {
+                                txtMatchStatus.setText("No Matches Remaining");
+                                txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
+                            } else {
+                                txtMatchStatus.setText("Found " + currentMatches.size() + " Matches");
+                                txtMatchStatus.setTextColor(Color.parseColor("#4CAF50"));
+                            }
 
-                        if (currentMatches.isEmpty()) {
-                            txtMatchStatus.setText("No Matches Remaining");
-                            txtMatchStatus.setTextColor(Color.parseColor("#F44336"));
                         } else {
-                            txtMatchStatus.setText("Found " + currentMatches.size() + " Matches");
-                            txtMatchStatus.setTextColor(Color.parseColor("#4CAF50"));
+                            Toast.makeText(this, "Delete Failed", Toast.LENGTH_SHORT).show();
                         }
-
-                    } else {
-                        Toast.makeText(this, "Delete Failed", Toast.LENGTH_SHORT).show();
-                    }
-                })
+                    });
+                }))
                 .setNegativeButton("Cancel", null)
                 .show();
     }
@@ -258,20 +584,14 @@ public class MatchActivity extends AppCompatActivity implements MorfinAuth_Callb
     private void resetUI() {
         isCapturing = false;
         btnStartMatch.setEnabled(true);
+        btnKiosk.setEnabled(true);
+        btnKiosk.setText("Start Kiosk Mode");
+        btnVerify.setEnabled(true);
     }
 
     @Override
     public void OnPreview(int errorCode, int quality, byte[] image) {
-        if (errorCode == 0 && image != null) {
-            Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length);
-            runOnUiThread(() -> {
-                if (bitmap != null) {
-                    imgMatchPreview.setImageTintList(null);
-                    imgMatchPreview.clearColorFilter();
-                    imgMatchPreview.setImageBitmap(bitmap);
-                }
-            });
-        }
+        if (errorCode == 0) previewDecoder.submit(image, quality);
     }
 
     @Override
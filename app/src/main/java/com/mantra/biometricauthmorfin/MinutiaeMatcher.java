@@ -0,0 +1,45 @@
+package com.mantra.biometricauthmorfin;
+
+// Pure-Java stand-in for the SDK matcher: pairs minutiae of the same type that lie within a
+// small distance and angle of each other, without any alignment. Good enough to tell a
+// re-capture of the same synthetic finger from a different one, on the JVM or in the simulator.
+public class MinutiaeMatcher implements TemplateMatcher {
+
+    private static final int MAX_DISTANCE = 12;
+    private static final int MAX_ANGLE = 12;
+
+    @Override
+    public int match(byte[] probe, byte[] reference) {
+        FmrTemplate a, b;
+        try {
+            a = FmrTemplate.parse(probe);
+            b = FmrTemplate.parse(reference);
+        } catch (FmrFormatException e) {
+            return -1;
+        }
+        return match(a, b);
+    }
+
+    public int match(FmrTemplate a, FmrTemplate b) {
+        int na = a.getMinutiaeCount();
+        int nb = b.getMinutiaeCount();
+        if (na == 0 || nb == 0) return 0;
+
+        boolean[] used = new boolean[nb];
+        int paired = 0;
+        for (int i = 0; i < na; i++) {
+            for (int j = 0; j < nb; j++) {
+                if (used[j] || a.minutiaType[i] != b.minutiaType[j]) continue;
+                int dx = a.minutiaX[i] - b.minutiaX[j];
+                int dy = a.minutiaY[i] - b.minutiaY[j];
+                if (dx * dx + dy * dy > MAX_DISTANCE * MAX_DISTANCE) continue;
+                int da = Math.abs((a.minutiaAngle[i] & 0xFF) - (b.minutiaAngle[j] & 0xFF));
+                if (Math.min(da, 256 - da) > MAX_ANGLE) continue;
+                used[j] = true;
+                paired++;
+                break;
+            }
+        }
+        return 2000 * paired / (na + nb);
+    }
+}
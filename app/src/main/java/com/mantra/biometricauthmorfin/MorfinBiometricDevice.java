@@ -0,0 +1,61 @@
+package com.mantra.biometricauthmorfin;
+
+import android.content.Context;
+
+import com.mantra.morfinauth.DeviceInfo;
+import com.mantra.morfinauth.MorfinAuth;
+import com.mantra.morfinauth.MorfinAuth_Callback;
+import com.mantra.morfinauth.enums.DeviceModel;
+import com.mantra.morfinauth.enums.ImageFormat;
+import com.mantra.morfinauth.enums.LogLevel;
+import com.mantra.morfinauth.enums.TemplateFormat;
+
+public class MorfinBiometricDevice implements BiometricDevice {
+
+    private final MorfinAuth morfinAuth;
+
+    public MorfinBiometricDevice(Context context, MorfinAuth_Callback callback, String logPath) {
+        morfinAuth = new MorfinAuth(context, callback);
+        morfinAuth.SetLogProperties(logPath, LogLevel.ERROR);
+    }
+
+    @Override
+    public int init(DeviceModel model, DeviceInfo info) {
+        return morfinAuth.Init(model, info);
+    }
+
+    @Override
+    public int uninit() {
+        return morfinAuth.Uninit();
+    }
+
+    @Override
+    public int autoCapture(int minQuality, int timeOut, int[] quality, int[] nfiq) {
+        return morfinAuth.AutoCapture(minQuality, timeOut, quality, nfiq);
+    }
+
+    @Override
+    public int startCapture(int minQuality, int timeOut) {
+        return morfinAuth.StartCapture(minQuality, timeOut);
+    }
+
+    @Override
+    public int stopCapture() {
+        return morfinAuth.StopCapture();
+    }
+
+    @Override
+    public int getImage(byte[] image, int[] size, int compressionRatio, ImageFormat format) {
+        return morfinAuth.GetImage(image, size, compressionRatio, format);
+    }
+
+    @Override
+    public int getTemplate(byte[] template, int[] size, TemplateFormat format) {
+        return morfinAuth.GetTemplate(template, size, format);
+    }
+
+    @Override
+    public int matchTemplate(byte[] probe, byte[] reference, int[] score, TemplateFormat format) {
+        return morfinAuth.MatchTemplate(probe, reference, score, format);
+    }
+}
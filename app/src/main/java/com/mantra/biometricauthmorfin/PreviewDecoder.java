@@ -0,0 +1,189 @@
+package com.mantra.biometricauthmorfin;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+// Decodes OnPreview frames on its own thread and hands them to the main thread, newest frame only.
+// A frame that arrives while an older one is still waiting replaces it (counted as dropped), and
+// nothing new is decoded until the main thread has shown the previous bitmap, so the UI can never
+// fall behind the sensor. Frames are decoded as RGB_565 into recycled bitmaps via inBitmap: one on
+// screen, one in flight.
+public class PreviewDecoder {
+
+    private static final String TAG = "PreviewDecoder";
+    private static final long FPS_WINDOW_MS = 1000;
+
+    public interface Listener {
+        // Main thread. The bitmap stays valid until the next call.
+        void onPreviewFrame(Bitmap bitmap, int quality);
+    }
+
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+
+    // Guarded by lock.
+    private byte[] pendingFrame;
+    private int pendingLength;
+    private int pendingQuality;
+    private boolean frameInFlight;
+    private boolean running;
+    // Bumped by start() and stop(); a decode loop or posted frame from an earlier start sees a
+    // different value and bows out, even if the decoder has been restarted since.
+    private int generation;
+    private Thread thread;
+    private final ArrayDeque<byte[]> spareFrames = new ArrayDeque<>();
+    private final ArrayDeque<Bitmap> spareBitmaps = new ArrayDeque<>();
+
+    // Main thread only.
+    private Bitmap displayed;
+
+    private volatile long submitted;
+    private volatile long dropped;
+    private volatile long shown;
+    private volatile float fps;
+    private long windowStart;
+    private int windowFrames;
+
+    public PreviewDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void start() {
+        Thread started;
+        synchronized (lock) {
+            if (running) return;
+            running = true;
+            int current = ++generation;
+            started = thread = new Thread(() -> decodeLoop(current), "preview-decoder");
+        }
+        started.start();
+    }
+
+    public void stop() {
+        Thread stopped;
+        synchronized (lock) {
+            if (!running) return;
+            running = false;
+            generation++;
+            pendingFrame = null;
+            frameInFlight = false;
+            stopped = thread;
+            thread = null;
+            lock.notifyAll();
+        }
+        if (stopped != null) stopped.interrupt();
+        Log.d(TAG, getStats());
+    }
+
+    // Called on the SDK callback thread. The bytes are copied into a recycled array, because the
+    // SDK may reuse its buffer once the callback returns.
+    public void submit(byte[] image, int quality) {
+        if (image == null) return;
+        synchronized (lock) {
+            if (!running) return;
+            submitted++;
+            byte[] frame = spareFrames.pollFirst();
+            if (frame == null || frame.length < image.length) frame = new byte[image.length];
+            System.arraycopy(image, 0, frame, 0, image.length);
+
+            if (pendingFrame != null) {
+                dropped++;
+                spareFrames.addFirst(pendingFrame);
+            }
+            pendingFrame = frame;
+            pendingLength = image.length;
+            pendingQuality = quality;
+            lock.notifyAll();
+        }
+    }
+
+    private void decodeLoop(int myGeneration) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+
+        while (true) {
+            byte[] frame;
+            int length;
+            int quality;
+            Bitmap reuse;
+            synchronized (lock) {
+                while (generation == myGeneration && (pendingFrame == null || frameInFlight)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        if (generation != myGeneration) return;
+                    }
+                }
+                if (generation != myGeneration) return;
+                frame = pendingFrame;
+                length = pendingLength;
+                quality = pendingQuality;
+                pendingFrame = null;
+                reuse = spareBitmaps.pollFirst();
+            }
+
+            Bitmap bitmap = decode(frame, length, options, reuse);
+
+            synchronized (lock) {
+                spareFrames.addFirst(frame);
+                if (generation != myGeneration) return;
+                if (bitmap == null) continue;
+                frameInFlight = true;
+            }
+            mainHandler.post(() -> show(bitmap, quality, myGeneration));
+        }
+    }
+
+    private static Bitmap decode(byte[] frame, int length, BitmapFactory.Options options, Bitmap reuse) {
+        options.inBitmap = reuse;
+        try {
+            return BitmapFactory.decodeByteArray(frame, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            // The recycled bitmap does not fit this frame (sensor changed); decode into a fresh one.
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(frame, 0, length, options);
+        }
+    }
+
+    private void show(Bitmap bitmap, int quality, int fromGeneration) {
+        Bitmap previous = displayed;
+        synchronized (lock) {
+            // Decoded before a stop; the current loop has its own frame in flight.
+            if (generation != fromGeneration) return;
+            frameInFlight = false;
+            displayed = bitmap;
+            if (previous != null && previous != bitmap) spareBitmaps.addFirst(previous);
+            lock.notifyAll();
+        }
+
+        shown++;
+        long now = SystemClock.elapsedRealtime();
+        if (windowStart == 0) windowStart = now;
+        windowFrames++;
+        if (now - windowStart >= FPS_WINDOW_MS) {
+            fps = windowFrames * 1000f / (now - windowStart);
+            windowStart = now;
+            windowFrames = 0;
+        }
+
+        listener.onPreviewFrame(bitmap, quality);
+    }
+
+    public long getSubmittedFrames() { return submitted; }
+    public long getDroppedFrames() { return dropped; }
+    public long getShownFrames() { return shown; }
+    public float getFps() { return fps; }
+
+    public String getStats() {
+        return String.format(Locale.US, "preview: %d submitted, %d shown, %d dropped, %.1f fps", submitted, shown, dropped, fps);
+    }
+}
@@ -0,0 +1,159 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// The users identified most often lately, tried before the rest of the gallery. Each hit adds a
+// weight that grows by 2^(1/HALF_LIFE_HITS) per identification, so older hits fade relative to new
+// ones: someone seen twice an hour ago ranks below someone seen twice just now, and regulars
+// stay near the top. Kept in step with TemplateGallery through its listener.
+public class RecentHits implements TemplateGallery.Listener {
+
+    static final int DEFAULT_CAPACITY = 512;
+    static final int DEFAULT_HOT_SIZE = 64;
+    static final int HALF_LIFE_HITS = 256;
+
+    private static final double GROWTH = Math.pow(2, 1.0 / HALF_LIFE_HITS);
+    // Weights are scaled back down before they get anywhere near overflowing.
+    private static final double RESCALE_AT = 1e100;
+
+    private static final class Tracked {
+        TemplateGallery.Entry entry;
+        double weight;
+
+        Tracked(TemplateGallery.Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private final int capacity;
+    private final int hotSize;
+
+    // Guarded by this.
+    private final Map<String, Tracked> tracked = new HashMap<>();
+    private double increment = 1;
+    private List<TemplateGallery.Entry> hot = Collections.emptyList();
+    private boolean hotStale;
+    private long searches;
+    private long hits;
+    private long hitNanos;
+    private long missNanos;
+    private long fullSearches;
+    private long fullSearchNanos;
+
+    public RecentHits() {
+        this(DEFAULT_CAPACITY, DEFAULT_HOT_SIZE);
+    }
+
+    public RecentHits(int capacity, int hotSize) {
+        this.capacity = capacity;
+        this.hotSize = hotSize;
+    }
+
+    // Best first, at most hotSize entries. The returned list never changes.
+    public synchronized List<TemplateGallery.Entry> getHotEntries() {
+        if (hotStale) {
+            List<Tracked> ranked = new ArrayList<>(tracked.values());
+            Collections.sort(ranked, (a, b) -> Double.compare(b.weight, a.weight));
+            List<TemplateGallery.Entry> top = new ArrayList<>(Math.min(hotSize, ranked.size()));
+            for (int i = 0; i < ranked.size() && i < hotSize; i++) top.add(ranked.get(i).entry);
+            hot = Collections.unmodifiableList(top);
+            hotStale = false;
+        }
+        return hot;
+    }
+
+    public synchronized void record(TemplateGallery.Entry entry) {
+        Tracked t = tracked.get(entry.getUserId());
+        if (t == null) {
+            if (tracked.size() >= capacity) evictLightest();
+            t = new Tracked(entry);
+            tracked.put(entry.getUserId(), t);
+        }
+        t.weight += increment;
+        increment *= GROWTH;
+        if (increment > RESCALE_AT) {
+            for (Tracked other : tracked.values()) other.weight /= increment;
+            increment = 1;
+        }
+        hotStale = true;
+    }
+
+    // A search settled by the hot entries alone.
+    public synchronized void recordHit(long nanos) {
+        searches++;
+        hits++;
+        hitNanos += nanos;
+    }
+
+    // A search that tried the hot entries, found nothing confident and went on to the full gallery.
+    public synchronized void recordMiss(long hotNanos, long fullNanos) {
+        searches++;
+        missNanos += hotNanos;
+        recordFullSearch(fullNanos);
+    }
+
+    // Any search of the gallery proper, to price what a hit saves.
+    public synchronized void recordFullSearch(long nanos) {
+        fullSearches++;
+        fullSearchNanos += nanos;
+    }
+
+    public synchronized int size() { return tracked.size(); }
+    public synchronized long getSearches() { return searches; }
+    public synchronized long getHits() { return hits; }
+
+    public synchronized float getHitRate() {
+        return searches == 0 ? 0f : hits / (float) searches;
+    }
+
+    // What hits saved against the average full search, less what misses spent on the hot pass.
+    public synchronized long getTimeSavedNanos() {
+        if (fullSearches == 0) return -missNanos;
+        long meanFull = fullSearchNanos / fullSearches;
+        return hits * meanFull - hitNanos - missNanos;
+    }
+
+    public synchronized String getStats() {
+        return String.format(Locale.US, "recent hits: %d users, %d/%d searches (%.1f%%), ~%.1f ms saved",
+                tracked.size(), hits, searches, getHitRate() * 100, getTimeSavedNanos() / 1e6);
+    }
+
+    private void evictLightest() {
+        String lightest = null;
+        double min = Double.MAX_VALUE;
+        for (Map.Entry<String, Tracked> e : tracked.entrySet()) {
+            if (e.getValue().weight < min) {
+                min = e.getValue().weight;
+                lightest = e.getKey();
+            }
+        }
+        if (lightest != null) tracked.remove(lightest);
+    }
+
+    @Override
+    public synchronized void onEntryAdded(TemplateGallery.Entry entry) {
+        // A rename, or a re-enrolled ID: track the current entry.
+        Tracked t = tracked.get(entry.getUserId());
+        if (t != null) {
+            t.entry = entry;
+            hotStale = true;
+        }
+    }
+
+    @Override
+    public synchronized void onEntryRemoved(String userId) {
+        if (tracked.remove(userId) != null) hotStale = true;
+    }
+
+    @Override
+    public synchronized void onCleared() {
+        tracked.clear();
+        increment = 1;
+        hotStale = true;
+    }
+}
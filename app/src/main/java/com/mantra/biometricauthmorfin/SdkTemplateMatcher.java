@@ -0,0 +1,29 @@
+package com.mantra.biometricauthmorfin;
+
+import com.mantra.morfinauth.enums.TemplateFormat;
+
+// The SDK does not document MatchTemplate as reentrant, so calls are serialized across every
+// SdkTemplateMatcher (there is one MorfinAuth per process). Only pure-Java matchers run in parallel.
+public class SdkTemplateMatcher implements TemplateMatcher {
+
+    private static final Object SDK_LOCK = new Object();
+
+    private final BiometricDevice device;
+
+    public SdkTemplateMatcher(BiometricDevice device) {
+        this.device = device;
+    }
+
+    @Override
+    public int match(byte[] probe, byte[] reference) {
+        int[] score = new int[1];
+        int ret;
+        synchronized (SDK_LOCK) {
+            ret = device.matchTemplate(probe, reference, score, TemplateFormat.FMR_V2011);
+        }
+        return ret == 0 ? score[0] : -1;
+    }
+
+    @Override
+    public boolean isConcurrent() { return false; }
+}
@@ -0,0 +1,288 @@
+package com.mantra.biometricauthmorfin;
+
+import android.util.Log;
+
+import com.mantra.morfinauth.DeviceInfo;
+import com.mantra.morfinauth.MorfinAuth_Callback;
+import com.mantra.morfinauth.enums.DeviceDetection;
+import com.mantra.morfinauth.enums.DeviceModel;
+import com.mantra.morfinauth.enums.ImageFormat;
+import com.mantra.morfinauth.enums.TemplateFormat;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Stands in for the MorfinAuth scanner so capture, enrollment and matching can be load-tested
+// without hardware. Captures either replay recorded templates/images (name.fmr + name.bmp in
+// Config.recordingDir) or come from a pool of synthetic fingers.
+public class SimulatedBiometricDevice implements BiometricDevice {
+
+    private static final String TAG = "SimulatedDevice";
+
+    // Not SDK codes; only the simulator returns these.
+    public static final int ERROR_CAPTURE_STOPPED = -9001;
+    public static final int ERROR_NOT_INITIALIZED = -9002;
+    public static final int ERROR_NO_CAPTURE = -9003;
+    public static final int ERROR_DISCONNECTED = -9004;
+    public static final int ERROR_BUFFER_TOO_SMALL = -9005;
+    public static final int ERROR_UNSUPPORTED_FORMAT = -9006;
+
+    public static class Config {
+        public String deviceName = DeviceModel.values()[0].name();
+        public int width = 300;
+        public int height = 400;
+        public long seed = 1;
+        public int fingers = 50;
+        public File recordingDir;
+
+        public int captureLatencyMs = 800;
+        public int latencyJitterMs = 300;
+        public int previewFrames = 5;
+        public int quality = 80;
+        public int nfiq = 2;
+
+        // Share of captures that run to the full timeout and fail with -2019.
+        public float timeoutRate = 0f;
+        // Pull the (virtual) cable after this many captures; 0 never disconnects.
+        public int disconnectAfterCaptures = 0;
+    }
+
+    private final MorfinAuth_Callback callback;
+    private final Config config;
+    private final Random random;
+    private final SyntheticFingers synthetic;
+    private final MinutiaeMatcher matcher = new MinutiaeMatcher();
+
+    private final List<byte[]> recordedTemplates = new ArrayList<>();
+    private final List<byte[]> recordedImages = new ArrayList<>();
+
+    private final Object lock = new Object();
+    private volatile boolean connected = false;
+    private volatile boolean initialized = false;
+    private boolean capturing = false;
+    private boolean stopRequested = false;
+    private int captureCount = 0;
+    private byte[] lastTemplate;
+    private byte[] lastImage;
+
+    public SimulatedBiometricDevice(MorfinAuth_Callback callback, Config config) {
+        this.callback = callback;
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.synthetic = new SyntheticFingers(config.seed, config.width, config.height);
+        loadRecordings();
+    }
+
+    // The real SDK reports an attached sensor shortly after construction. Called by the owner once
+    // it is ready for callbacks, not from the constructor, since the callback may be the owner
+    // itself and still half-built.
+    public void start() {
+        new Thread(this::simulateConnect, "simulated-attach").start();
+    }
+
+    public void simulateConnect() {
+        connected = true;
+        callback.OnDeviceDetection(config.deviceName, DeviceDetection.CONNECTED);
+    }
+
+    public void simulateDisconnect() {
+        synchronized (lock) {
+            connected = false;
+            initialized = false;
+            stopRequested = true;
+            lock.notifyAll();
+        }
+        callback.OnDeviceDetection(config.deviceName, DeviceDetection.DISCONNECTED);
+    }
+
+    @Override
+    public int init(DeviceModel model, DeviceInfo info) {
+        if (!connected) return ERROR_DISCONNECTED;
+        info.Make = "Simulated";
+        info.Model = config.deviceName;
+        info.SerialNo = "SIM-" + config.seed;
+        info.Width = config.width;
+        info.Height = config.height;
+        initialized = true;
+        return 0;
+    }
+
+    @Override
+    public int uninit() {
+        stopCapture();
+        initialized = false;
+        return 0;
+    }
+
+    @Override
+    public int autoCapture(int minQuality, int timeOut, int[] quality, int[] nfiq) {
+        int ret = capture(timeOut);
+        if (ret == 0) {
+            quality[0] = config.quality;
+            nfiq[0] = config.nfiq;
+        }
+        return ret;
+    }
+
+    @Override
+    public int startCapture(int minQuality, int timeOut) {
+        if (!initialized) return ERROR_NOT_INITIALIZED;
+        new Thread(() -> {
+            int ret = capture(timeOut);
+            callback.OnComplete(ret, ret == 0 ? config.quality : 0, ret == 0 ? config.nfiq : 0);
+        }, "simulated-capture").start();
+        return 0;
+    }
+
+    @Override
+    public int stopCapture() {
+        synchronized (lock) {
+            if (capturing) {
+                stopRequested = true;
+                lock.notifyAll();
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int getImage(byte[] image, int[] size, int compressionRatio, ImageFormat format) {
+        if (format != ImageFormat.BMP) return ERROR_UNSUPPORTED_FORMAT;
+        return copyOut(lastImage, image, size);
+    }
+
+    @Override
+    public int getTemplate(byte[] template, int[] size, TemplateFormat format) {
+        if (format != TemplateFormat.FMR_V2011) return ERROR_UNSUPPORTED_FORMAT;
+        return copyOut(lastTemplate, template, size);
+    }
+
+    @Override
+    public int matchTemplate(byte[] probe, byte[] reference, int[] score, TemplateFormat format) {
+        int s = matcher.match(probe, reference);
+        if (s < 0) {
+            s = Arrays.equals(probe, reference) ? 1000 : 0;
+        }
+        score[0] = s;
+        return 0;
+    }
+
+    private int capture(int timeOut) {
+        synchronized (lock) {
+            if (!connected) return ERROR_DISCONNECTED;
+            if (!initialized) return ERROR_NOT_INITIALIZED;
+            capturing = true;
+            stopRequested = false;
+        }
+
+        try {
+            boolean timesOut = random.nextFloat() < config.timeoutRate;
+            long duration = timesOut ? timeOut
+                    : Math.max(0, config.captureLatencyMs + random.nextInt(2 * config.latencyJitterMs + 1) - config.latencyJitterMs);
+
+            int finger = pickFinger();
+            byte[] preview = imageFor(finger);
+            long step = duration / (config.previewFrames + 1);
+            for (int i = 0; i < config.previewFrames; i++) {
+                if (!sleepUnlessStopped(step)) return stoppedCode();
+                callback.OnPreview(0, config.quality * (i + 1) / config.previewFrames, preview);
+            }
+            if (!sleepUnlessStopped(duration - step * config.previewFrames)) return stoppedCode();
+            if (timesOut) return ERROR_TIMEOUT;
+
+            synchronized (lock) {
+                lastTemplate = templateFor(finger);
+                lastImage = preview;
+                captureCount++;
+            }
+        } finally {
+            synchronized (lock) {
+                capturing = false;
+            }
+        }
+
+        if (config.disconnectAfterCaptures > 0 && captureCount % config.disconnectAfterCaptures == 0) {
+            new Thread(this::simulateDisconnect, "simulated-detach").start();
+        }
+        return 0;
+    }
+
+    private boolean sleepUnlessStopped(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (lock) {
+            long remaining;
+            while (!stopRequested && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return !stopRequested;
+        }
+    }
+
+    private int stoppedCode() {
+        return connected ? ERROR_CAPTURE_STOPPED : ERROR_DISCONNECTED;
+    }
+
+    private int pickFinger() {
+        if (!recordedTemplates.isEmpty()) return captureCount % recordedTemplates.size();
+        return random.nextInt(config.fingers);
+    }
+
+    private byte[] templateFor(int finger) {
+        if (!recordedTemplates.isEmpty()) return recordedTemplates.get(finger);
+        return synthetic.capture(finger, random);
+    }
+
+    private byte[] imageFor(int finger) {
+        if (!recordedImages.isEmpty() && recordedImages.get(finger) != null) return recordedImages.get(finger);
+        return synthetic.bmpImage(finger);
+    }
+
+    private int copyOut(byte[] source, byte[] target, int[] size) {
+        synchronized (lock) {
+            if (source == null) return ERROR_NO_CAPTURE;
+            if (target.length < source.length) return ERROR_BUFFER_TOO_SMALL;
+            System.arraycopy(source, 0, target, 0, source.length);
+            size[0] = source.length;
+            return 0;
+        }
+    }
+
+    private void loadRecordings() {
+        File dir = config.recordingDir;
+        if (dir == null || !dir.isDirectory()) return;
+
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".fmr"));
+        if (files == null) return;
+        Arrays.sort(files);
+
+        for (File file : files) {
+            try {
+                recordedTemplates.add(readFile(file));
+                File image = new File(dir, file.getName().replace(".fmr", ".bmp"));
+                recordedImages.add(image.exists() ? readFile(image) : null);
+            } catch (IOException e) {
+                Log.e(TAG, "Skipping recording " + file.getName(), e);
+            }
+        }
+        Log.d(TAG, "Loaded " + recordedTemplates.size() + " recorded captures");
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+}
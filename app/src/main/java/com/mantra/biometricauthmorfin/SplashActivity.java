@@ -4,10 +4,34 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Shown while the expensive startup work runs in parallel: opening (and if needed upgrading) the
+// database, loading the template gallery, and constructing the SDK. Leaves as soon as all three
+// are done, or after WARM_UP_TIMEOUT_MS at worst; anything unfinished simply completes on first use.
 public class SplashActivity extends AppCompatActivity {
 
+    private static final String TAG = "Startup";
+    private static final long WARM_UP_TIMEOUT_MS = 5000;
+
+    private static final StageTimings.Stage DATABASE = StageTimings.getInstance().stage("startup.database");
+    private static final StageTimings.Stage GALLERY = StageTimings.getInstance().stage("startup.gallery");
+    private static final StageTimings.Stage SDK = StageTimings.getInstance().stage("startup.sdk");
+    private static final StageTimings.Stage SPLASH = StageTimings.getInstance().stage("startup.splash");
+    private static final StageTimings.Stage PROCESS = StageTimings.getInstance().stage("startup.process");
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Starts at one for onCreate itself, so the splash cannot leave before every step is queued.
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private long splashStart;
+    private boolean launched = false;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -18,11 +42,73 @@ public class SplashActivity extends AppCompatActivity {
             getSupportActionBar().hide();
         }
 
+        splashStart = System.nanoTime();
+        FingerprintDatabaseHelper dbHelper = FingerprintDatabaseHelper.getInstance(this);
+
+        warmUp(AppExecutors.getInstance().io(), () -> {
+            long t = System.nanoTime();
+            dbHelper.getWritableDatabase();
+            dbHelper.getUserCount();
+            DATABASE.lap(t);
+        });
+        // Opens the database too if it gets there first; the helper serializes that.
+        warmUp(AppExecutors.getInstance().io(), () -> {
+            long t = System.nanoTime();
+            dbHelper.getTemplateGallery();
+            GALLERY.lap(t);
+        });
+        warmUp(AppExecutors.getInstance().device(), () -> {
+            long t = System.nanoTime();
+            BiometricManager.getInstance(this).getIdentificationEngine();
+            SDK.lap(t);
+        });
+
+        finishedWarmUpStep();
+
+        mainHandler.postDelayed(() -> {
+            Log.w(TAG, "Warm-up still running after " + WARM_UP_TIMEOUT_MS + " ms, continuing");
+            launchMain();
+        }, WARM_UP_TIMEOUT_MS);
+    }
+
+    private void warmUp(Executor executor, Runnable task) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Warm-up step failed", e);
+            } finally {
+                finishedWarmUpStep();
+            }
+        });
+    }
+
+    private void finishedWarmUpStep() {
+        if (pending.decrementAndGet() == 0) mainHandler.post(this::launchMain);
+    }
+
+    private void launchMain() {
+        if (launched) return;
+        launched = true;
+        mainHandler.removeCallbacksAndMessages(null);
+
+        SPLASH.lap(splashStart);
+        PROCESS.getHistogram().recordMicros((SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()) * 1000);
+        for (String line : StageTimings.getInstance().report()) {
+            if (line.startsWith("startup.")) Log.i(TAG, line);
+        }
+
+        // Backed out of the splash: do not bring the app up behind the user's back.
+        if (isFinishing()) return;
+        Intent intent = new Intent(SplashActivity.this, MainActivity.class);
+        startActivity(intent);
+        finish();
+    }
 
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-            startActivity(intent);
-            finish();
-        }, 2000);
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mainHandler.removeCallbacksAndMessages(null);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package com.mantra.biometricauthmorfin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Per-stage latency histograms for the capture -> template -> match pipeline, kept in memory for
+// the life of the process. Stages are timed with System.nanoTime(), which is monotonic:
+//
+//   long t = System.nanoTime();
+//   ... capture ...
+//   t = CAPTURE.lap(t);
+//   ... template ...
+//   t = TEMPLATE.lap(t);
+public class StageTimings {
+
+    public static final String FILE_NAME = "stage_timings.txt";
+
+    public static final class Stage {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+        public LatencyHistogram getHistogram() { return histogram; }
+
+        // Records the time since startNanos and returns now, to start the next stage from.
+        public long lap(long startNanos) {
+            long now = System.nanoTime();
+            histogram.recordNanos(now - startNanos);
+            return now;
+        }
+    }
+
+    private static final StageTimings instance = new StageTimings();
+
+    // Guarded by itself; insertion order is the order stages are reported in.
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    public static StageTimings getInstance() { return instance; }
+
+    public Stage stage(String name) {
+        synchronized (stages) {
+            Stage stage = stages.get(name);
+            if (stage == null) {
+                stage = new Stage(name);
+                stages.put(name, stage);
+            }
+            return stage;
+        }
+    }
+
+    public List<Stage> getStages() {
+        synchronized (stages) {
+            return new ArrayList<>(stages.values());
+        }
+    }
+
+    public void reset() {
+        for (Stage stage : getStages()) stage.histogram.reset();
+    }
+
+    // One line per stage that has samples, in milliseconds.
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.US, "%-22s %6s %9s %9s %9s %9s %9s",
+                "stage (ms)", "count", "mean", "p50", "p95", "p99", "max"));
+        for (Stage stage : getStages()) {
+            LatencyHistogram h = stage.histogram;
+            if (h.getCount() == 0) continue;
+            lines.add(String.format(Locale.US, "%-22s %6d %9.1f %9.1f %9.1f %9.1f %9.1f",
+                    stage.name, h.getCount(), h.getMeanMicros() / 1000,
+                    h.getPercentileMicros(50) / 1000.0, h.getPercentileMicros(95) / 1000.0,
+                    h.getPercentileMicros(99) / 1000.0, h.getMaxMicros() / 1000.0));
+        }
+        return lines;
+    }
+
+    public void writeTo(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (String line : report()) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.Random;
+
+// Deterministic synthetic fingers: finger N always has the same base minutiae, and every
+// capture of it is a slightly jittered copy. Used by the simulated scanner and benchmarks.
+public class SyntheticFingers {
+
+    private static final int RESOLUTION = 197;
+    private static final int BMP_HEADER_LENGTH = 14 + 40 + 256 * 4;
+
+    private final long seed;
+    private final int width;
+    private final int height;
+
+    public SyntheticFingers(long seed, int width, int height) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    public byte[] template(int finger) {
+        return capture(finger, null);
+    }
+
+    // A fresh capture of the finger; a null random returns the undisturbed base template.
+    public byte[] capture(int finger, Random jitter) {
+        Random base = new Random(seed * 1_000_003L + finger);
+        FmrTemplateWriter writer = new FmrTemplateWriter(width, height, RESOLUTION)
+                .setFingerPosition(1 + finger % 10)
+                .setFingerQuality(60 + base.nextInt(40));
+
+        int count = 25 + base.nextInt(35);
+        for (int i = 0; i < count; i++) {
+            int type = 1 + base.nextInt(2);
+            int x = base.nextInt(width);
+            int y = base.nextInt(height);
+            int angle = base.nextInt(256);
+            int quality = 40 + base.nextInt(60);
+            if (jitter != null) {
+                x = clamp(x + jitter.nextInt(7) - 3, width);
+                y = clamp(y + jitter.nextInt(7) - 3, height);
+                angle = (angle + jitter.nextInt(5) - 2) & 0xFF;
+            }
+            writer.addMinutia(type, x, y, angle, quality);
+        }
+        return writer.toByteArray();
+    }
+
+    // 8-bit grayscale BMP with a ridge-like pattern, decodable by BitmapFactory.
+    public byte[] bmpImage(int finger) {
+        int stride = (width + 3) & ~3;
+        int pixelBytes = stride * height;
+        byte[] bmp = new byte[BMP_HEADER_LENGTH + pixelBytes];
+
+        bmp[0] = 'B';
+        bmp[1] = 'M';
+        putInt(bmp, 2, bmp.length);
+        putInt(bmp, 10, BMP_HEADER_LENGTH);
+        putInt(bmp, 14, 40);
+        putInt(bmp, 18, width);
+        putInt(bmp, 22, height);
+        bmp[26] = 1;
+        bmp[28] = 8;
+        putInt(bmp, 34, pixelBytes);
+        putInt(bmp, 46, 256);
+        for (int i = 0; i < 256; i++) {
+            int p = 54 + i * 4;
+            bmp[p] = bmp[p + 1] = bmp[p + 2] = (byte) i;
+        }
+
+        Random base = new Random(seed * 1_000_003L + finger);
+        double cx = width * (0.4 + base.nextDouble() * 0.2);
+        double cy = height * (0.4 + base.nextDouble() * 0.2);
+        double period = 7 + base.nextDouble() * 3;
+        for (int y = 0; y < height; y++) {
+            int row = BMP_HEADER_LENGTH + (height - 1 - y) * stride;
+            for (int x = 0; x < width; x++) {
+                double r = Math.hypot(x - cx, (y - cy) * 0.8);
+                bmp[row + x] = (byte) (128 + 100 * Math.sin(r * 2 * Math.PI / period));
+            }
+        }
+        return bmp;
+    }
+
+    private static int clamp(int v, int limit) {
+        return Math.max(0, Math.min(limit - 1, v));
+    }
+
+    private static void putInt(byte[] b, int pos, int v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >>> 8);
+        b[pos + 2] = (byte) (v >>> 16);
+        b[pos + 3] = (byte) (v >>> 24);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Least-recently-used cache of reference templates by user ID, for 1:1 verification without a
+// database read. Every write to a user must invalidate it; a load that raced with an
+// invalidation is returned to its caller but not kept.
+public class TemplateCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public interface Loader {
+        // The user's entry, or null if there is no such user.
+        TemplateGallery.Entry load(String userId);
+    }
+
+    private final Map<String, TemplateGallery.Entry> entries;
+
+    // Guarded by this.
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TemplateCache(int capacity) {
+        entries = new LinkedHashMap<String, TemplateGallery.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TemplateGallery.Entry> eldest) {
+                if (size() <= capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    public TemplateGallery.Entry get(String userId, Loader loader) {
+        long loadGeneration;
+        synchronized (this) {
+            TemplateGallery.Entry entry = entries.get(userId);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        // Loaded without the lock, so a slow read does not hold up other users' lookups.
+        TemplateGallery.Entry loaded = loader.load(userId);
+        synchronized (this) {
+            if (loaded != null && generation == loadGeneration) entries.put(userId, loaded);
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate(String userId) {
+        generation++;
+        entries.remove(userId);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHitCount() { return hits; }
+    public synchronized long getMissCount() { return misses; }
+
+    public synchronized String getStats() {
+        long lookups = hits + misses;
+        return String.format(Locale.US, "template cache: %d entries, %d lookups, %.1f%% hits, %d evicted",
+                entries.size(), lookups, lookups == 0 ? 0 : hits * 100.0 / lookups, evictions);
+    }
+}
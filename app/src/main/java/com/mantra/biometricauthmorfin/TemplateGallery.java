@@ -0,0 +1,164 @@
+package com.mantra.biometricauthmorfin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class TemplateGallery {
+
+    public interface Loader {
+        List<Entry> loadEntries();
+    }
+
+    // Called with the gallery lock held, so listeners see changes in order.
+    public interface Listener {
+        void onEntryAdded(Entry entry);
+        void onEntryRemoved(String userId);
+        void onCleared();
+    }
+
+    public static class Entry {
+        private final String userId;
+        private final String userName;
+        // Where the template is read from (a slice of the mapped gallery file), or null.
+        private final ByteBuffer source;
+        private final byte[] template;
+
+        public Entry(String userId, String userName, byte[] template) {
+            this.userId = userId;
+            this.userName = userName;
+            this.source = null;
+            this.template = template;
+        }
+
+        Entry(String userId, String userName, ByteBuffer source) {
+            this.userId = userId;
+            this.userName = userName;
+            this.source = source;
+            this.template = null;
+        }
+
+        public String getUserId() { return userId; }
+        public String getUserName() { return userName; }
+
+        // A mapped template is copied out on every call and not kept, so the gallery stays in the
+        // page cache rather than on the heap; callers hold on to the copy only as long as they need it.
+        public byte[] getTemplate() {
+            if (template != null) return template;
+            ByteBuffer view = source.duplicate();
+            byte[] t = new byte[view.remaining()];
+            view.get(t);
+            return t;
+        }
+
+        Entry withName(String newName) {
+            return template != null ? new Entry(userId, newName, template) : new Entry(userId, newName, source);
+        }
+    }
+
+    private static TemplateGallery instance;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Readers only ever see an immutable copy, so a scan never races enrollment.
+    private volatile List<Entry> snapshot = Collections.emptyList();
+    private volatile boolean loaded = false;
+
+    public static synchronized TemplateGallery getInstance() {
+        if (instance == null) {
+            instance = new TemplateGallery();
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public List<Entry> getEntries(Loader loader) {
+        if (!loaded) load(loader);
+        return snapshot;
+    }
+
+    public synchronized void load(Loader loader) {
+        if (loaded) return;
+
+        entries.clear();
+        for (Listener listener : listeners) listener.onCleared();
+        for (Entry entry : loader.loadEntries()) {
+            entries.put(entry.getUserId(), entry);
+        }
+        loaded = true;
+        publish();
+    }
+
+    public boolean isLoaded() { return loaded; }
+
+    public int size() { return snapshot.size(); }
+
+    public synchronized Entry get(String userId) {
+        return entries.get(userId);
+    }
+
+    public synchronized void put(Entry entry) {
+        if (!loaded) return;
+        entries.put(entry.getUserId(), entry);
+        publish();
+        for (Listener listener : listeners) listener.onEntryAdded(entry);
+    }
+
+    // Publishes once for the whole batch instead of once per entry.
+    public synchronized void putAll(List<Entry> added) {
+        if (!loaded || added.isEmpty()) return;
+        for (Entry entry : added) entries.put(entry.getUserId(), entry);
+        publish();
+        for (Entry entry : added) {
+            for (Listener listener : listeners) listener.onEntryAdded(entry);
+        }
+    }
+
+    public synchronized void remove(String userId) {
+        if (!loaded) return;
+        if (entries.remove(userId) != null) {
+            publish();
+            for (Listener listener : listeners) listener.onEntryRemoved(userId);
+        }
+    }
+
+    public synchronized void rename(String userId, String newName) {
+        if (!loaded) return;
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            Entry renamed = entry.withName(newName);
+            entries.put(userId, renamed);
+            publish();
+            for (Listener listener : listeners) listener.onEntryAdded(renamed);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        publish();
+        for (Listener listener : listeners) listener.onCleared();
+    }
+
+    public synchronized void invalidate() {
+        entries.clear();
+        loaded = false;
+        snapshot = Collections.emptyList();
+        for (Listener listener : listeners) listener.onCleared();
+    }
+
+    private void publish() {
+        snapshot = Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+}
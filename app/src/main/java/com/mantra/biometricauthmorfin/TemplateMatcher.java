@@ -0,0 +1,13 @@
+package com.mantra.biometricauthmorfin;
+
+public interface TemplateMatcher {
+
+    // Returns the similarity score, or a negative value if the pair could not be compared.
+    // Implementations must be safe to call from several matching threads at once, if only by
+    // serializing the calls themselves.
+    int match(byte[] probe, byte[] reference);
+
+    // False when calls are serialized inside match(): the engine then scans on a single worker
+    // instead of parking the others on the same lock, so extra cores do not speed it up.
+    default boolean isConcurrent() { return true; }
+}
@@ -0,0 +1,44 @@
+package com.mantra.biometricauthmorfin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class TopKCandidates {
+
+    private final int k;
+
+    // Min-heap on score, so the weakest kept candidate is always at the head.
+    private final PriorityQueue<IdentificationEngine.Candidate> heap =
+            new PriorityQueue<>((a, b) -> Integer.compare(a.getScore(), b.getScore()));
+
+    public TopKCandidates(int k) {
+        this.k = k;
+    }
+
+    public boolean isBounded() { return k > IdentificationRequest.UNLIMITED; }
+
+    public int size() { return heap.size(); }
+
+    // Cheap pre-check so callers can skip building a Candidate that would be dropped anyway.
+    public boolean accepts(int score) {
+        return !isBounded() || heap.size() < k || score > heap.peek().getScore();
+    }
+
+    public void offer(IdentificationEngine.Candidate candidate) {
+        if (!accepts(candidate.getScore())) return;
+        heap.add(candidate);
+        if (isBounded() && heap.size() > k) heap.poll();
+    }
+
+    public void addAll(TopKCandidates other) {
+        for (IdentificationEngine.Candidate candidate : other.heap) offer(candidate);
+    }
+
+    public List<IdentificationEngine.Candidate> toSortedList() {
+        List<IdentificationEngine.Candidate> sorted = new ArrayList<>(heap);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -7,6 +7,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
 import java.util.List;
 
 public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder> {
@@ -20,8 +21,55 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
     }
 
     public UserAdapter(List<FingerprintDatabaseHelper.UserRecord> userList, OnUserActionListener listener) {
-        this.userList = userList;
+        this.userList = new ArrayList<>(userList);
         this.actionListener = listener;
+        setHasStableIds(true);
+    }
+
+    // Changes below touch only the affected rows, so the list never rebinds as a whole.
+
+    public void appendPage(List<FingerprintDatabaseHelper.UserRecord> page) {
+        if (page.isEmpty()) return;
+        int start = userList.size();
+        userList.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    // Swapping between the full list and search results replaces everything at once.
+    public void setUsers(List<FingerprintDatabaseHelper.UserRecord> users) {
+        userList = new ArrayList<>(users);
+        notifyDataSetChanged();
+    }
+
+    public void renameUser(String userId, String newName) {
+        int position = indexOf(userId);
+        if (position < 0) return;
+        userList.get(position).userName = newName;
+        notifyItemChanged(position);
+    }
+
+    public void removeUser(String userId) {
+        int position = indexOf(userId);
+        if (position < 0) return;
+        userList.remove(position);
+        notifyItemRemoved(position);
+    }
+
+    // Keyset cursor for the next page.
+    public long getLastRowId() {
+        return userList.isEmpty() ? 0 : userList.get(userList.size() - 1).rowId;
+    }
+
+    private int indexOf(String userId) {
+        for (int i = 0; i < userList.size(); i++) {
+            if (userList.get(i).userId.equals(userId)) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return userList.get(position).rowId;
     }
 
     @NonNull
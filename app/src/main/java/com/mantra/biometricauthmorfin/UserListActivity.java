@@ -1,7 +1,11 @@
 package com.mantra.biometricauthmorfin;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.InputType;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
@@ -12,21 +16,37 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class UserListActivity extends AppCompatActivity {
 
+    private static final int PAGE_SIZE = 100;
+    // Start fetching the next page when this close to the end of what is loaded.
+    private static final int PREFETCH_DISTANCE = 30;
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+
     private RecyclerView recyclerView;
     private TextView txtEmpty, txtCount;
     private FingerprintDatabaseHelper dbHelper;
     private UserAdapter adapter;
 
+    private int totalUsers = 0;
+    private boolean loadingPage = false;
+    private boolean reachedEnd = false;
+
+    // Empty = the full list. Bumping generation drops pages still in flight for an older query.
+    private String query = "";
+    private int generation = 0;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_user_list);
 
-        dbHelper = new FingerprintDatabaseHelper(this);
+        dbHelper = FingerprintDatabaseHelper.getInstance(this);
         initViews();
         loadData();
     }
@@ -36,37 +56,106 @@ public class UserListActivity extends AppCompatActivity {
         txtEmpty = findViewById(R.id.txtEmpty);
         txtCount = findViewById(R.id.txtCount);
         findViewById(R.id.btnBack).setOnClickListener(v -> finish());
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+
+        adapter = new UserAdapter(new ArrayList<>(), new UserAdapter.OnUserActionListener() {
+            @Override
+            public void onUserLongClick(FingerprintDatabaseHelper.UserRecord user) {
+                showDeleteDialog(user);
+            }
+
+            @Override
+            public void onUserEditClick(FingerprintDatabaseHelper.UserRecord user) {
+                showEditDialog(user);
+            }
+        });
+        recyclerView.setAdapter(adapter);
+
+        EditText edtSearch = findViewById(R.id.edtSearch);
+        edtSearch.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                String text = s.toString().trim();
+                if (pendingSearch != null) searchHandler.removeCallbacks(pendingSearch);
+                pendingSearch = () -> applyQuery(text);
+                searchHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
+            }
+        });
+
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView rv, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
     }
 
     private void loadData() {
-        List<FingerprintDatabaseHelper.UserRecord> users = dbHelper.getAllUsersList();
-        updateUI(users);
+        AppExecutors.getInstance().io().execute(() -> {
+            int count = dbHelper.getUserCount();
+            runOnUiThread(() -> {
+                totalUsers = count;
+                updateUI();
+                loadNextPage();
+            });
+        });
     }
 
-    private void updateUI(List<FingerprintDatabaseHelper.UserRecord> users) {
-        if (users != null && !users.isEmpty()) {
-            adapter = new UserAdapter(users, new UserAdapter.OnUserActionListener() {
-                @Override
-                public void onUserLongClick(FingerprintDatabaseHelper.UserRecord user) {
-                    showDeleteDialog(user);
-                }
+    private void applyQuery(String text) {
+        if (text.equals(query)) return;
+        query = text;
+        generation++;
+        loadingPage = false;
+        reachedEnd = false;
+        adapter.setUsers(new ArrayList<>());
+        loadNextPage();
+    }
 
-                @Override
-                public void onUserEditClick(FingerprintDatabaseHelper.UserRecord user) {
-                    showEditDialog(user);
-                }
+    // Pages are fetched off the main thread and appended; only one request is in flight at a time.
+    private void loadNextPage() {
+        if (loadingPage || reachedEnd) return;
+        loadingPage = true;
+        long after = adapter.getLastRowId();
+        String pageQuery = query;
+        int pageGeneration = generation;
+
+        AppExecutors.getInstance().io().execute(() -> {
+            List<FingerprintDatabaseHelper.UserRecord> page = pageQuery.isEmpty()
+                    ? dbHelper.getUsersPage(after, PAGE_SIZE)
+                    : dbHelper.searchUsers(pageQuery, after, PAGE_SIZE);
+            runOnUiThread(() -> {
+                if (pageGeneration != generation) return;
+                loadingPage = false;
+                if (isFinishing() || isDestroyed()) return;
+                if (page.size() < PAGE_SIZE) reachedEnd = true;
+                adapter.appendPage(page);
+                updateUI();
             });
+        });
+    }
 
-            recyclerView.setAdapter(adapter);
+    private void updateUI() {
+        boolean empty = adapter.getItemCount() == 0 && (query.isEmpty() ? totalUsers == 0 : reachedEnd);
+        if (!empty) {
             txtEmpty.setVisibility(View.GONE);
             recyclerView.setVisibility(View.VISIBLE);
-            txtCount.setText("(" + users.size() + ")");
         } else {
             txtEmpty.setVisibility(View.VISIBLE);
             recyclerView.setVisibility(View.GONE);
-            txtCount.setText("(0)");
         }
+        txtCount.setText("(" + totalUsers + ")");
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (pendingSearch != null) searchHandler.removeCallbacks(pendingSearch);
     }
 
     // --- RENAME DIALOG ---
@@ -87,13 +176,17 @@ public class UserListActivity extends AppCompatActivity {
                 .setPositiveButton("Save", (dialog, which) -> {
                     String newName = input.getText().toString().trim();
                     if (!newName.isEmpty()) {
-                        boolean updated = dbHelper.updateUserName(user.userId, newName);
-                        if (updated) {
-                            Toast.makeText(this, "Name Updated", Toast.LENGTH_SHORT).show();
-                            loadData(); // Refresh List
-                        } else {
-                            Toast.makeText(this, "Update Failed", Toast.LENGTH_SHORT).show();
-                        }
+                        AppExecutors.getInstance().io().execute(() -> {
+                            boolean updated = dbHelper.updateUserName(user.userId, newName);
+                            runOnUiThread(() -> {
+                                if (updated) {
+                                    Toast.makeText(this, "Name Updated", Toast.LENGTH_SHORT).show();
+                                    adapter.renameUser(user.userId, newName);
+                                } else {
+                                    Toast.makeText(this, "Update Failed", Toast.LENGTH_SHORT).show();
+                                }
+                            });
+                        });
                     } else {
                         Toast.makeText(this, "Name cannot be empty", Toast.LENGTH_SHORT).show();
                     }
@@ -107,15 +200,21 @@ public class UserListActivity extends AppCompatActivity {
         new AlertDialog.Builder(this)
                 .setTitle("Delete User")
                 .setMessage("Are you sure you want to delete " + user.userName + " (" + user.userId + ")? This cannot be undone.")
-                .setPositiveButton("Delete", (dialog, which) -> {
+                .setPositiveButton("Delete", (dialog, which) -> AppExecutors.getInstance().io().execute(() -> {
                     boolean deleted = dbHelper.deleteUser(user.userId);
-                    if (deleted) {
-                        Toast.makeText(this, "User Deleted", Toast.LENGTH_SHORT).show();
-                        loadData();
-                    } else {
-                        Toast.makeText(this, "Delete Failed", Toast.LENGTH_SHORT).show();
-                    }
-                })
+                    runOnUiThread(() -> {
+                        if (deleted) {
+                            Toast.makeText(this, "User Deleted", Toast.LENGTH_SHORT).show();
+                            adapter.removeUser(user.userId);
+                            totalUsers--;
+                            updateUI();
+                            // A delete may pull the end of the loaded range into view.
+                            loadNextPage();
+                        } else {
+                            Toast.makeText(this, "Delete Failed", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }))
                 .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
                 .show();
     }
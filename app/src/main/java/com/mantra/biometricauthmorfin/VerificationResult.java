@@ -0,0 +1,27 @@
+package com.mantra.biometricauthmorfin;
+
+public class VerificationResult {
+
+    private final String userId;
+    private final String userName;
+    private final boolean enrolled;
+    private final int score;
+    private final boolean verified;
+
+    public VerificationResult(String userId, String userName, boolean enrolled, int score, boolean verified) {
+        this.userId = userId;
+        this.userName = userName;
+        this.enrolled = enrolled;
+        this.score = score;
+        this.verified = verified;
+    }
+
+    public String getUserId() { return userId; }
+    public String getUserName() { return userName; }
+
+    // False when there is no such user; nothing was matched then.
+    public boolean isEnrolled() { return enrolled; }
+
+    public int getScore() { return score; }
+    public boolean isVerified() { return verified; }
+}
@@ -0,0 +1,76 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AppExecutorsTest {
+
+    @After
+    public void tearDown() {
+        AppExecutors.getInstance().shutdown(1000);
+    }
+
+    @Test
+    public void deviceCommandsRunOneAtATimeInOrder() throws Exception {
+        AppExecutors executors = AppExecutors.getInstance();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        StringBuffer order = new StringBuffer();
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            int n = i;
+            executors.device().execute(() -> {
+                if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                order.append(n);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("01234", order.toString());
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void recordsQueueMetrics() throws Exception {
+        AppExecutors executors = AppExecutors.getInstance();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        AtomicReference<String> threadName = new AtomicReference<>();
+        executors.device().execute(() -> {
+            threadName.set(Thread.currentThread().getName());
+            try { release.await(); } catch (InterruptedException ignored) { }
+            done.countDown();
+        });
+        executors.device().execute(done::countDown);
+        executors.device().execute(done::countDown);
+
+        assertEquals(3, executors.device().getSubmittedCount());
+        assertTrue(executors.device().getPeakQueueDepth() >= 1);
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("device-1", threadName.get());
+        assertTrue(executors.getStats().startsWith("device: 3 submitted"));
+    }
+
+    @Test
+    public void shutdownDrainsQueuedWorkAndNextInstanceIsFresh() {
+        AppExecutors executors = AppExecutors.getInstance();
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 10; i++) executors.io().execute(ran::incrementAndGet);
+
+        assertTrue(executors.shutdown(5000));
+        assertEquals(10, ran.get());
+        assertTrue(executors.isShutdown());
+        assertNotSame(executors, AppExecutors.getInstance());
+        assertFalse(AppExecutors.getInstance().isShutdown());
+    }
+}
@@ -0,0 +1,182 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CandidateIndexTest {
+
+    private static byte[] randomTemplate(Random random, int fingerPosition) {
+        FmrTemplateWriter writer = new FmrTemplateWriter(400, 500, 197).setFingerPosition(fingerPosition);
+        int count = 20 + random.nextInt(40);
+        for (int i = 0; i < count; i++) {
+            writer.addMinutia(1 + random.nextInt(2), 100 + random.nextInt(200), 100 + random.nextInt(300), random.nextInt(256), 60);
+        }
+        return writer.toByteArray();
+    }
+
+    // Same minutiae moved by a few pixels and degrees, as a second capture of the finger would be.
+    private static byte[] jitter(byte[] template, Random random) {
+        FmrTemplate t = FmrTemplate.parse(template);
+        FmrTemplateWriter writer = new FmrTemplateWriter(400, 500, 197).setFingerPosition(t.getFingerPosition(0));
+        for (int i = 0; i < t.getMinutiaeCount(); i++) {
+            writer.addMinutia(t.getType(i),
+                    Math.max(0, t.getX(i) + random.nextInt(7) - 3),
+                    Math.max(0, t.getY(i) + random.nextInt(7) - 3),
+                    (t.getAngle(i) + random.nextInt(3) - 1) & 0xFF,
+                    t.getQuality(i));
+        }
+        return writer.toByteArray();
+    }
+
+    // The finger placed again, shifted and turned on the sensor.
+    private static byte[] displace(byte[] template, int dx, int dy, double degrees) {
+        FmrTemplate t = FmrTemplate.parse(template);
+        FmrTemplateWriter writer = new FmrTemplateWriter(400, 500, 197).setFingerPosition(t.getFingerPosition(0));
+        double cos = Math.cos(Math.toRadians(degrees));
+        double sin = Math.sin(Math.toRadians(degrees));
+        int turn = (int) Math.round(degrees * 256 / 360);
+        for (int i = 0; i < t.getMinutiaeCount(); i++) {
+            double x = t.getX(i) - 200;
+            double y = t.getY(i) - 250;
+            writer.addMinutia(t.getType(i),
+                    (int) Math.round(200 + x * cos - y * sin) + dx,
+                    (int) Math.round(250 + x * sin + y * cos) + dy,
+                    (t.getAngle(i) + turn) & 0xFF,
+                    t.getQuality(i));
+        }
+        return writer.toByteArray();
+    }
+
+    private static List<TemplateGallery.Entry> gallery(Random random, int size) {
+        List<TemplateGallery.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            entries.add(new TemplateGallery.Entry("USER_" + i, null, randomTemplate(random, 1 + i % 10)));
+        }
+        return entries;
+    }
+
+    @Test
+    public void shortlistKeepsTheGenuineTemplate() {
+        Random random = new Random(5);
+        List<TemplateGallery.Entry> entries = gallery(random, 4000);
+        CandidateIndex index = new CandidateIndex();
+        index.setShortlistFraction(0.05f);
+
+        int hits = 0;
+        for (int trial = 0; trial < 50; trial++) {
+            TemplateGallery.Entry genuine = entries.get(random.nextInt(entries.size()));
+            List<TemplateGallery.Entry> shortlist = index.shortlist(jitter(genuine.getTemplate(), random), entries);
+
+            assertEquals(200, shortlist.size());
+            if (shortlist.contains(genuine)) hits++;
+        }
+        assertTrue("recall " + hits + "/50", hits >= 45);
+    }
+
+    @Test
+    public void shortlistKeepsShiftedAndRotatedCaptures() {
+        Random random = new Random(6);
+        List<TemplateGallery.Entry> entries = gallery(random, 4000);
+        CandidateIndex index = new CandidateIndex();
+        index.setShortlistFraction(0.05f);
+
+        int hits = 0;
+        for (int trial = 0; trial < 50; trial++) {
+            TemplateGallery.Entry genuine = entries.get(random.nextInt(entries.size()));
+            byte[] probe = displace(jitter(genuine.getTemplate(), random),
+                    random.nextInt(81) - 40, random.nextInt(81) - 40, random.nextInt(41) - 20);
+            if (index.shortlist(probe, entries).contains(genuine)) hits++;
+        }
+        assertTrue("recall " + hits + "/50", hits >= 45);
+    }
+
+    @Test
+    public void pruningIsOffByDefault() {
+        List<TemplateGallery.Entry> entries = gallery(new Random(7), 5000);
+
+        assertSame(entries, new CandidateIndex().shortlist(entries.get(0).getTemplate(), entries));
+    }
+
+    @Test
+    public void recallBelowTheFloorStopsPruning() {
+        List<TemplateGallery.Entry> entries = gallery(new Random(8), 1000);
+        CandidateIndex index = new CandidateIndex();
+        index.setShortlistFraction(0.1f);
+        byte[] probe = entries.get(0).getTemplate();
+        assertEquals(200, index.shortlist(probe, entries).size());
+
+        for (int i = 0; i < CandidateIndex.MIN_RECALL_SAMPLES; i++) index.recordRecall(i % 10 != 0);
+        assertTrue(index.isBelowRecallFloor());
+        assertSame(entries, index.shortlist(probe, entries));
+
+        index.resetRecall();
+        assertEquals(200, index.shortlist(probe, entries).size());
+    }
+
+    @Test
+    public void smallGalleriesAreNotPruned() {
+        List<TemplateGallery.Entry> entries = gallery(new Random(1), 150);
+
+        assertSame(entries, new CandidateIndex().shortlist(entries.get(0).getTemplate(), entries));
+    }
+
+    @Test
+    public void unparseableProbeFallsBackToTheFullGallery() {
+        List<TemplateGallery.Entry> entries = gallery(new Random(2), 1000);
+
+        CandidateIndex index = new CandidateIndex();
+        index.setShortlistFraction(0.1f);
+
+        assertSame(entries, index.shortlist(new byte[]{1, 2, 3}, entries));
+    }
+
+    @Test
+    public void unparseableGalleryTemplatesAreAlwaysShortlisted() {
+        List<TemplateGallery.Entry> entries = gallery(new Random(3), 1000);
+        TemplateGallery.Entry opaque = new TemplateGallery.Entry("OPAQUE", null, new byte[]{9, 9, 9});
+        entries.add(opaque);
+
+        CandidateIndex index = new CandidateIndex();
+        index.setShortlistFraction(0.1f);
+
+        assertTrue(index.shortlist(entries.get(0).getTemplate(), entries).contains(opaque));
+    }
+
+    @Test
+    public void followsGalleryChanges() {
+        Random random = new Random(4);
+        TemplateGallery gallery = new TemplateGallery();
+        CandidateIndex index = new CandidateIndex();
+        gallery.addListener(index);
+        gallery.load(() -> gallery(random, 10));
+
+        gallery.put(new TemplateGallery.Entry("USER_NEW", null, randomTemplate(random, 2)));
+        assertEquals(1, index.size());
+
+        gallery.remove("USER_NEW");
+        assertEquals(0, index.size());
+
+        index.shortlist(randomTemplate(random, 1), gallery(random, 300));
+        gallery.clear();
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void reportsRecallFromSamples() {
+        CandidateIndex index = new CandidateIndex();
+        assertEquals(1f, index.getRecall(), 0f);
+
+        index.recordRecall(true);
+        index.recordRecall(true);
+        index.recordRecall(true);
+        index.recordRecall(false);
+
+        assertEquals(4, index.getRecallSamples());
+        assertEquals(0.75f, index.getRecall(), 0.0001f);
+    }
+}
@@ -0,0 +1,60 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class CaptureBufferPoolTest {
+
+    @Test
+    public void sizedForAPaddedEightBitBmp() {
+        CaptureBufferPool pool = CaptureBufferPool.forSensor(257, 300);
+        assertEquals(CaptureBufferPool.BMP_HEADER_LENGTH + 260 * 300, pool.getImageCapacity());
+
+        byte[] bmp = new SyntheticFingers(1, 257, 300).bmpImage(0);
+        assertEquals(bmp.length, pool.getImageCapacity());
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        CaptureBufferPool pool = CaptureBufferPool.forSensor(300, 400);
+        for (int i = 0; i < 100; i++) {
+            try (CaptureBufferPool.Lease image = pool.acquireImage();
+                 CaptureBufferPool.Lease template = pool.acquireTemplate()) {
+                image.lengthOut()[0] = 10;
+                template.lengthOut()[0] = 5;
+            }
+        }
+        assertEquals(2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void viewIsBoundedToTheFilledLength() {
+        CaptureBufferPool pool = new CaptureBufferPool(64, 16);
+        try (CaptureBufferPool.Lease template = pool.acquireTemplate()) {
+            for (int i = 0; i < 5; i++) template.array()[i] = (byte) (i + 1);
+            template.lengthOut()[0] = 5;
+
+            ByteBuffer view = template.view();
+            assertEquals(5, view.remaining());
+            assertTrue(view.isReadOnly());
+            assertEquals(5, view.get(4));
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, template.toByteArray());
+        }
+    }
+
+    @Test
+    public void closingTwiceReturnsTheBufferOnce() {
+        CaptureBufferPool pool = new CaptureBufferPool(64, 16);
+        CaptureBufferPool.Lease lease = pool.acquireImage();
+        lease.close();
+        lease.close();
+
+        CaptureBufferPool.Lease first = pool.acquireImage();
+        CaptureBufferPool.Lease second = pool.acquireImage();
+        assertNotSame(first.array(), second.array());
+        assertEquals(2, pool.getAllocationCount());
+    }
+}
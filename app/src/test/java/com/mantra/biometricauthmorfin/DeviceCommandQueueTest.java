@@ -0,0 +1,121 @@
+package com.mantra.biometricauthmorfin;
+
+import com.mantra.morfinauth.DeviceInfo;
+import com.mantra.morfinauth.enums.DeviceModel;
+import com.mantra.morfinauth.enums.ImageFormat;
+import com.mantra.morfinauth.enums.TemplateFormat;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DeviceCommandQueueTest {
+
+    // Captures block until stopCapture(); an async capture then reports OnComplete to the queue.
+    private static class FakeDevice implements BiometricDevice {
+        final AtomicInteger stops = new AtomicInteger();
+        volatile DeviceCommandQueue queue;
+        volatile boolean asyncInFlight;
+        volatile CountDownLatch release = new CountDownLatch(1);
+
+        @Override public int init(DeviceModel model, DeviceInfo info) { return 0; }
+        @Override public int uninit() { return 0; }
+
+        @Override
+        public int autoCapture(int minQuality, int timeOut, int[] quality, int[] nfiq) {
+            try {
+                return release.await(timeOut, TimeUnit.MILLISECONDS) ? -1 : ERROR_TIMEOUT;
+            } catch (InterruptedException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int startCapture(int minQuality, int timeOut) {
+            asyncInFlight = true;
+            return 0;
+        }
+
+        @Override
+        public int stopCapture() {
+            stops.incrementAndGet();
+            release.countDown();
+            if (asyncInFlight) {
+                asyncInFlight = false;
+                new Thread(() -> {
+                    try { Thread.sleep(50); } catch (InterruptedException ignored) { }
+                    queue.onCaptureComplete();
+                }).start();
+            }
+            return 0;
+        }
+
+        @Override public int getImage(byte[] image, int[] size, int compressionRatio, ImageFormat format) { return 0; }
+        @Override public int getTemplate(byte[] template, int[] size, TemplateFormat format) { return 0; }
+        @Override public int matchTemplate(byte[] probe, byte[] reference, int[] score, TemplateFormat format) { return 0; }
+    }
+
+    private final FakeDevice device = new FakeDevice();
+    private final DeviceCommandQueue queue = new DeviceCommandQueue(device);
+
+    {
+        device.queue = queue;
+    }
+
+    @After
+    public void tearDown() {
+        AppExecutors.getInstance().shutdown(1000);
+    }
+
+    @Test
+    public void captureOnIdleSensorStartsWithoutWaiting() {
+        assertEquals(BiometricDevice.ERROR_TIMEOUT, queue.autoCapture(60, 10, new int[1], new int[1]));
+
+        assertEquals(DeviceCommandQueue.State.IDLE, queue.getState());
+        assertEquals(0, queue.getSettleWaits());
+        assertEquals(0, device.stops.get());
+    }
+
+    @Test
+    public void stopWhenIdleDoesNotReachTheDevice() throws Exception {
+        queue.stopCapture();
+        Thread.sleep(50);
+
+        assertEquals(0, device.stops.get());
+    }
+
+    @Test
+    public void stopInterruptsABlockingCapture() throws Exception {
+        CountDownLatch returned = new CountDownLatch(1);
+        queue.execute(() -> {
+            queue.autoCapture(60, 10_000, new int[1], new int[1]);
+            returned.countDown();
+        });
+        while (queue.getState() != DeviceCommandQueue.State.CAPTURING) Thread.sleep(5);
+
+        queue.stopCapture();
+
+        assertTrue(returned.await(2, TimeUnit.SECONDS));
+        assertEquals(1, device.stops.get());
+        assertEquals(DeviceCommandQueue.State.IDLE, queue.getState());
+    }
+
+    @Test
+    public void captureAfterAnAbandonedAsyncCaptureWaitsForItToEnd() {
+        assertEquals(0, queue.startCapture(60, 10_000));
+        assertEquals(DeviceCommandQueue.State.CAPTURING, queue.getState());
+
+        device.release = new CountDownLatch(0);
+        queue.autoCapture(60, 10, new int[1], new int[1]);
+
+        assertEquals(1, device.stops.get());
+        assertEquals(1, queue.getSettleWaits());
+        assertTrue(queue.getSettleWaitMs() < DeviceCommandQueue.SETTLE_TIMEOUT_MS);
+        assertEquals(DeviceCommandQueue.State.IDLE, queue.getState());
+    }
+}
@@ -0,0 +1,80 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class EnrollmentArchiveTest {
+
+    private final SyntheticFingers fingers = new SyntheticFingers(7, 300, 400);
+
+    private static File tempDir() throws IOException {
+        File dir = File.createTempFile("archive", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(data);
+        }
+        file.deleteOnExit();
+    }
+
+    private static final byte[] NAMES = "user_id,user_name\nUSER_002,Asha\nUSER_001, Ravi \n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void readsDirectoryInUserIdOrder() throws IOException {
+        File dir = tempDir();
+        write(new File(dir, "USER_002.fmr"), fingers.template(2));
+        write(new File(dir, "USER_001.fmr"), fingers.template(1));
+        write(new File(dir, "USER_001.bmp"), fingers.bmpImage(1));
+        write(new File(dir, "users.csv"), NAMES);
+        write(new File(dir, "notes.txt"), new byte[]{1, 2, 3});
+
+        try (EnrollmentArchive archive = EnrollmentArchive.open(dir)) {
+            assertEquals(Arrays.asList("USER_001", "USER_002"), archive.getUserIds());
+
+            EnrollmentArchive.Record first = archive.read("USER_001");
+            assertEquals("Ravi", first.userName);
+            assertArrayEquals(fingers.template(1), first.template);
+            assertArrayEquals(fingers.bmpImage(1), first.image);
+
+            EnrollmentArchive.Record second = archive.read("USER_002");
+            assertEquals("Asha", second.userName);
+            assertNull(second.image);
+        }
+    }
+
+    @Test
+    public void readsZipWithNestedFolders() throws IOException {
+        File zip = File.createTempFile("archive", ".zip");
+        zip.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("site/USER_010.fmr"));
+            out.write(fingers.template(10));
+            out.putNextEntry(new ZipEntry("site/USER_010.bmp"));
+            out.write(fingers.bmpImage(10));
+            out.putNextEntry(new ZipEntry("site/users.csv"));
+            out.write("USER_010,Meera\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (EnrollmentArchive archive = EnrollmentArchive.open(zip)) {
+            assertEquals(1, archive.size());
+            EnrollmentArchive.Record record = archive.read("USER_010");
+            assertEquals("Meera", record.userName);
+            assertArrayEquals(fingers.template(10), record.template);
+            assertArrayEquals(fingers.bmpImage(10), record.image);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EnrollmentPipelineTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final CaptureBufferPool buffers = new CaptureBufferPool(16, 16);
+
+    private final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+    private final EnrollmentPipeline.Listener listener = new EnrollmentPipeline.Listener() {
+        @Override public void onSaved(EnrollmentPipeline.Job job, String userId) { saved.add(job.userName + "=" + userId); }
+        @Override public void onFailed(EnrollmentPipeline.Job job, String reason) { failed.add(job.userName + ":" + reason); }
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private EnrollmentPipeline.Job job(String name) {
+        return new EnrollmentPipeline.Job(name, new byte[] {1}, buffers.acquireImage(), 80, 1, System.nanoTime());
+    }
+
+    @Test
+    public void savesInSubmissionOrderOneAtATime() throws Exception {
+        int[] next = {0};
+        int[] running = {0};
+        EnrollmentPipeline pipeline = new EnrollmentPipeline(executor, 3, job -> {
+            synchronized (running) {
+                assertEquals(0, running[0]++);
+            }
+            Thread.sleep(5);
+            synchronized (running) {
+                running[0]--;
+            }
+            job.image.close();
+            return "USER_" + (++next[0]);
+        }, listener);
+
+        for (int i = 1; i <= 6; i++) pipeline.submit(job("u" + i));
+        assertTrue(pipeline.awaitIdle(5000));
+
+        assertEquals(6, pipeline.getSavedCount());
+        assertEquals("u1=USER_1", saved.get(0));
+        assertEquals("u6=USER_6", saved.get(5));
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    public void submitBlocksWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        EnrollmentPipeline pipeline = new EnrollmentPipeline(executor, 2, job -> {
+            release.await();
+            job.image.close();
+            return "id";
+        }, listener);
+
+        pipeline.submit(job("a"));
+        pipeline.submit(job("b"));
+        assertEquals(2, pipeline.getPendingCount());
+
+        CountDownLatch third = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> {
+            try {
+                pipeline.submit(job("c"));
+                third.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        submitter.start();
+        assertFalse(third.await(100, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(third.await(2000, TimeUnit.MILLISECONDS));
+        assertTrue(pipeline.awaitIdle(2000));
+        assertEquals(3, saved.size());
+    }
+
+    @Test
+    public void aFailedUserDoesNotStopTheOnesBehindIt() throws Exception {
+        EnrollmentPipeline pipeline = new EnrollmentPipeline(executor, 3, job -> {
+            if (job.userName.equals("bad")) throw new IllegalStateException("disk full");
+            job.image.close();
+            return job.userName.equals("none") ? null : "id";
+        }, listener);
+
+        pipeline.submit(job("bad"));
+        pipeline.submit(job("none"));
+        pipeline.submit(job("good"));
+        assertTrue(pipeline.awaitIdle(2000));
+
+        assertEquals(1, pipeline.getSavedCount());
+        assertEquals(2, pipeline.getFailedCount());
+        assertEquals("bad:disk full", failed.get(0));
+        assertEquals("none:not saved", failed.get(1));
+        assertEquals("good=id", saved.get(0));
+        // The image of the job that threw went back to the pool.
+        int before = buffers.getAllocationCount();
+        buffers.acquireImage().close();
+        assertEquals(before, buffers.getAllocationCount());
+    }
+}
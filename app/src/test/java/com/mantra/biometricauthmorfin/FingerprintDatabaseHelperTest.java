@@ -0,0 +1,51 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FingerprintDatabaseHelperTest {
+
+    @Test
+    public void everyWordBecomesAPrefixTerm() {
+        assertEquals(Collections.singletonList("asha* ra*"), FingerprintDatabaseHelper.toMatchQueries("  Asha   Ra"));
+    }
+
+    @Test
+    public void userIdsMatchWithOrWithoutLeadingZeros() {
+        assertEquals(Arrays.asList("user*", "user_number:42* OR 042*"), FingerprintDatabaseHelper.toMatchQueries("USER_042"));
+        assertEquals(Collections.singletonList("user_number:42* OR 0042*"), FingerprintDatabaseHelper.toMatchQueries("0042"));
+        assertEquals(Collections.singletonList("user_number:0* OR 000*"), FingerprintDatabaseHelper.toMatchQueries("000"));
+        assertEquals(Collections.singletonList("42* 0*"), FingerprintDatabaseHelper.toMatchQueries("42 0"));
+    }
+
+    @Test
+    public void zeroPaddedNumbersStillMatchNames() {
+        // "007" as typed for names and IDs, stripped only for user_number.
+        assertEquals(Arrays.asList("agent*", "user_number:7* OR 007*"), FingerprintDatabaseHelper.toMatchQueries("007 Agent"));
+    }
+
+    @Test
+    public void ftsSyntaxIsStripped() {
+        assertEquals(Collections.singletonList("a* or* b*"), FingerprintDatabaseHelper.toMatchQueries("a OR \"b\"*"));
+        assertEquals(Collections.singletonList("near* x*"), FingerprintDatabaseHelper.toMatchQueries("NEAR(x)"));
+        assertTrue(FingerprintDatabaseHelper.toMatchQueries(" -*\" ").isEmpty());
+    }
+
+    @Test
+    public void claimedIdsAreNormalized() {
+        assertEquals("USER_042", FingerprintDatabaseHelper.toUserId(" 42 "));
+        assertEquals("USER_042", FingerprintDatabaseHelper.toUserId("0042"));
+        assertEquals("USER_042", FingerprintDatabaseHelper.toUserId("user_042"));
+        assertEquals("EMP-7", FingerprintDatabaseHelper.toUserId("EMP-7"));
+        assertEquals("", FingerprintDatabaseHelper.toUserId("  "));
+    }
+
+    @Test
+    public void nonAsciiLettersArePassedThrough() {
+        assertEquals(Collections.singletonList("\u00c9mile*"), FingerprintDatabaseHelper.toMatchQueries("\u00c9mile"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FmrTemplateTest {
+
+    private static byte[] sample() {
+        return new FmrTemplateWriter(800, 750, 197)
+                .setFingerPosition(2)
+                .setFingerQuality(64)
+                .addMinutia(FmrTemplate.TYPE_RIDGE_ENDING, 120, 340, 200, 80)
+                .addMinutia(FmrTemplate.TYPE_BIFURCATION, 799, 0, 0, 100)
+                .addMinutia(FmrTemplate.TYPE_OTHER, 16383, 16383, 255, 0)
+                .toByteArray();
+    }
+
+    @Test
+    public void roundTripsWriterOutput() {
+        FmrTemplate t = FmrTemplate.parse(sample());
+
+        assertEquals(1, t.getViewCount());
+        assertEquals(2, t.getFingerPosition(0));
+        assertEquals(64, t.getFingerQuality(0));
+        assertEquals(800, t.getImageWidth(0));
+        assertEquals(750, t.getImageHeight(0));
+        assertEquals(197, t.getResolutionX(0));
+        assertEquals(3, t.getMinutiaeCount());
+
+        assertEquals(FmrTemplate.TYPE_RIDGE_ENDING, t.getType(0));
+        assertEquals(120, t.getX(0));
+        assertEquals(340, t.getY(0));
+        assertEquals(200, t.getAngle(0));
+        assertEquals(80, t.getQuality(0));
+
+        assertEquals(FmrTemplate.TYPE_BIFURCATION, t.getType(1));
+        assertEquals(16383, t.getX(2));
+        assertEquals(255, t.getAngle(2));
+    }
+
+    @Test
+    public void readsFromBufferPositionWithoutMovingIt() {
+        byte[] record = sample();
+        byte[] padded = new byte[record.length + 37];
+        System.arraycopy(record, 0, padded, 11, record.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        buffer.position(11);
+
+        FmrTemplate t = FmrTemplate.parse(buffer);
+
+        assertEquals(11, buffer.position());
+        assertEquals(record.length, t.getRecordLength());
+        assertEquals(3, t.getMinutiaeCount());
+    }
+
+    @Test(expected = FmrFormatException.class)
+    public void rejectsWrongFormatId() {
+        byte[] record = sample();
+        record[0] = 'X';
+        FmrTemplate.parse(record);
+    }
+
+    @Test(expected = FmrFormatException.class)
+    public void rejects2005Version() {
+        byte[] record = sample();
+        record[4] = ' ';
+        record[5] = '2';
+        record[6] = '0';
+        FmrTemplate.parse(record);
+    }
+
+    @Test(expected = FmrFormatException.class)
+    public void rejectsTruncatedRecord() {
+        byte[] record = sample();
+        FmrTemplate.parse(record, 0, record.length - 1);
+    }
+
+    @Test
+    public void fuzzedInputOnlyFailsWithFormatException() {
+        Random random = new Random(19794);
+        byte[] valid = sample();
+
+        for (int round = 0; round < 20000; round++) {
+            byte[] input;
+            if (round % 4 == 0) {
+                input = new byte[random.nextInt(64)];
+                random.nextBytes(input);
+            } else {
+                input = valid.clone();
+                int flips = 1 + random.nextInt(4);
+                for (int i = 0; i < flips; i++) {
+                    input[random.nextInt(input.length)] = (byte) random.nextInt(256);
+                }
+            }
+            int length = round % 3 == 0 ? random.nextInt(input.length + 1) : input.length;
+
+            try {
+                FmrTemplate t = FmrTemplate.parse(input, 0, length);
+                assertTrue(t.getRecordLength() <= length);
+                for (int v = 0; v < t.getViewCount(); v++) {
+                    assertTrue(t.getMinutiaeStart(v) + t.getMinutiaeCount(v) <= t.getMinutiaeCount());
+                }
+            } catch (FmrFormatException expected) {
+                // malformed input is allowed to fail, but only this way
+            }
+        }
+    }
+}
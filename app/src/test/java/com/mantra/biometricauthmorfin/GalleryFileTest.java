@@ -0,0 +1,169 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GalleryFileTest {
+
+    private File dir;
+    private GalleryFile file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("gallery", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (file != null) file.close();
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    private static byte[] template(int seed) {
+        byte[] t = new byte[40 + seed];
+        for (int i = 0; i < t.length; i++) t[i] = (byte) (seed * 31 + i);
+        return t;
+    }
+
+    private GalleryFile build(long generation, int users) throws IOException {
+        GalleryFile.Builder builder = GalleryFile.rebuild(dir, generation);
+        for (int i = 1; i <= users; i++) builder.add(i, "USER_00" + i, i == 2 ? null : "Name " + i, template(i));
+        return builder.commit();
+    }
+
+    @Test
+    public void rebuiltFileOpensWithTheSameEntries() throws IOException {
+        build(7, 3).close();
+
+        file = GalleryFile.open(dir, 7);
+        List<TemplateGallery.Entry> entries = file.getEntries();
+
+        assertEquals(3, entries.size());
+        assertEquals("USER_001", entries.get(0).getUserId());
+        assertEquals("Name 1", entries.get(0).getUserName());
+        assertNull(entries.get(1).getUserName());
+        assertArrayEquals(template(3), entries.get(2).getTemplate());
+    }
+
+    @Test(expected = IOException.class)
+    public void staleGenerationIsRejected() throws IOException {
+        build(7, 1).close();
+        GalleryFile.open(dir, 8);
+    }
+
+    @Test(expected = IOException.class)
+    public void damagedHeaderIsRejected() throws IOException {
+        build(7, 1).close();
+        try (RandomAccessFile index = new RandomAccessFile(new File(dir, GalleryFile.INDEX_NAME), "rw")) {
+            index.seek(26);
+            index.write(9);
+        }
+        GalleryFile.open(dir, 7);
+    }
+
+    @Test
+    public void updatesSurviveAReopen() throws IOException {
+        file = build(1, 3);
+        file.append(Arrays.asList(new GalleryFile.Record(4, "USER_004", "Name 4", template(4)),
+                new GalleryFile.Record(5, "USER_005", "Name 5", template(5))), 2);
+        file.remove("USER_002", 3);
+        file.rename("USER_001", "Renamed", 4);
+        file.close();
+
+        file = GalleryFile.open(dir, 4);
+        List<TemplateGallery.Entry> entries = file.getEntries();
+
+        assertEquals(4, entries.size());
+        assertEquals("Renamed", entries.get(0).getUserName());
+        assertArrayEquals(template(1), entries.get(0).getTemplate());
+        for (TemplateGallery.Entry entry : entries) assertNotEquals("USER_002", entry.getUserId());
+        assertArrayEquals(template(5), entries.get(3).getTemplate());
+    }
+
+    @Test
+    public void anUnfinishedUpdateLeavesTheOldGeneration() throws IOException {
+        file = build(1, 2);
+        file.close();
+        // Simulates a crash after the data was written but before the header moved on.
+        try (RandomAccessFile data = new RandomAccessFile(new File(dir, GalleryFile.DATA_NAME), "rw")) {
+            data.seek(data.length());
+            data.write(new byte[100]);
+        }
+
+        file = GalleryFile.open(dir, 1);
+        assertEquals(2, file.size());
+    }
+
+    @Test
+    public void entriesFromAReplacedFileStayReadable() throws IOException {
+        file = build(1, 2);
+        TemplateGallery.Entry before = file.getEntries().get(1);
+        file.close();
+        file = build(2, 0);
+
+        assertEquals(0, file.getEntries().size());
+        assertArrayEquals(template(2), before.getTemplate());
+    }
+
+    @Test
+    public void dataFromAnotherRebuildIsRejected() throws IOException {
+        build(1, 1).close();
+        File saved = new File(dir, "saved.idx");
+        assertTrue(new File(dir, GalleryFile.INDEX_NAME).renameTo(saved));
+        build(1, 1).close();
+        assertTrue(saved.renameTo(new File(dir, GalleryFile.INDEX_NAME)));
+
+        try {
+            GalleryFile.open(dir, 1);
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("belong"));
+        }
+    }
+
+    @Test
+    public void mappedTemplatesAreNotKeptOnTheHeap() throws IOException {
+        file = build(1, 1);
+        TemplateGallery.Entry entry = file.getEntries().get(0);
+
+        assertNotSame(entry.getTemplate(), entry.getTemplate());
+        assertArrayEquals(entry.getTemplate(), entry.getTemplate());
+    }
+
+    @Test
+    public void updateThatFailsMidwayLeavesTheFileDirty() throws IOException {
+        file = build(1, 2);
+        char[] longName = new char[70_000];
+        Arrays.fill(longName, 'x');
+
+        try {
+            file.append(Arrays.asList(new GalleryFile.Record(3, "USER_003", "Name 3", template(3)),
+                    new GalleryFile.Record(4, "USER_004", new String(longName), template(4))), 2);
+            fail();
+        } catch (IOException expected) {
+        }
+        file.close();
+        file = null;
+
+        // USER_003's slot is on disk, but the header never got back to a committed generation.
+        try {
+            GalleryFile.open(dir, 1);
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("mid-update"));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class GrayscaleImageTest {
+
+    private static final int WIDTH = 257;   // odd width exercises BMP row padding
+    private static final int HEIGHT = 300;
+
+    @Test
+    public void pngRoundTripIsLossless() throws IOException {
+        byte[] bmp = new SyntheticFingers(3, WIDTH, HEIGHT).bmpImage(4);
+        GrayscaleImage image = GrayscaleImage.fromBmp(bmp, bmp.length);
+        byte[] png = image.toPng(6);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(image.getPixel(x, y), decoded.getRaster().getSample(x, y, 0));
+            }
+        }
+        assertTrue("png " + png.length + " vs bmp " + bmp.length, png.length < bmp.length);
+    }
+
+    @Test
+    public void bottomUpRowsAreFlipped() {
+        byte[] bmp = new SyntheticFingers(3, WIDTH, HEIGHT).bmpImage(4);
+        GrayscaleImage image = GrayscaleImage.fromBmp(bmp, bmp.length);
+        int stride = (WIDTH + 3) & ~3;
+        int lastRowInFile = 1078 + (HEIGHT - 1) * stride;
+        assertEquals(bmp[lastRowInFile + 5] & 0xFF, image.getPixel(5, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedBmpIsRejected() {
+        byte[] bmp = new SyntheticFingers(3, WIDTH, HEIGHT).bmpImage(4);
+        GrayscaleImage.fromBmp(bmp, bmp.length - 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonBmpIsRejected() {
+        GrayscaleImage.fromBmp(new byte[100], 100);
+    }
+}
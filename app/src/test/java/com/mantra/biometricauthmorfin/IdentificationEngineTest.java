@@ -0,0 +1,296 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class IdentificationEngineTest {
+
+    // Scores a pair by how many of the leading bytes agree, scaled to the SDK's 0-1000 range.
+    private static final TemplateMatcher PREFIX_MATCHER = (probe, reference) -> {
+        int same = 0;
+        int len = Math.min(probe.length, reference.length);
+        while (same < len && probe[same] == reference[same]) same++;
+        return same * 1000 / probe.length;
+    };
+
+    private final IdentificationEngine engine = new IdentificationEngine(PREFIX_MATCHER, 4);
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    private static byte[] template(int id) {
+        return new byte[]{(byte) (id >> 8), (byte) id, 7, 7, 7, 7, 7, 7, 7, 7};
+    }
+
+    private static List<TemplateGallery.Entry> gallery(int size) {
+        List<TemplateGallery.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            entries.add(new TemplateGallery.Entry("USER_" + i, "Name " + i, template(i)));
+        }
+        return entries;
+    }
+
+    @Test
+    public void findsTheExactTemplateAcrossPartitions() {
+        List<TemplateGallery.Entry> entries = gallery(5000);
+
+        List<IdentificationEngine.Candidate> result = engine.identify(new IdentificationRequest(template(4321)), entries).getCandidates();
+
+        assertEquals(1, result.size());
+        assertEquals("USER_4321", result.get(0).getUserId());
+        assertEquals(1000, result.get(0).getScore());
+    }
+
+    @Test
+    public void resultsAreSortedByDescendingScore() {
+        List<TemplateGallery.Entry> entries = gallery(300);
+        byte[] probe = template(42);
+
+        List<IdentificationEngine.Candidate> result =
+                engine.identify(new IdentificationRequest(probe).setThreshold(0), entries).getCandidates();
+
+        assertFalse(result.isEmpty());
+        assertEquals("USER_42", result.get(0).getUserId());
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).getScore() >= result.get(i).getScore());
+        }
+    }
+
+    @Test
+    public void matchesSequentialScan() {
+        List<TemplateGallery.Entry> entries = gallery(2000);
+        byte[] probe = template(1500);
+        int threshold = 50;
+
+        int expected = 0;
+        for (TemplateGallery.Entry entry : entries) {
+            if (PREFIX_MATCHER.match(probe, entry.getTemplate()) > threshold) expected++;
+        }
+
+        IdentificationResult result = engine.identify(new IdentificationRequest(probe).setThreshold(threshold), entries);
+        assertEquals(expected, result.getCandidates().size());
+        assertEquals(entries.size(), result.getComparisons());
+    }
+
+    @Test
+    public void emptyGalleryReturnsNoCandidates() {
+        assertNull(engine.identify(new IdentificationRequest(template(1)), new ArrayList<>()).getBest());
+    }
+
+    @Test
+    public void gallerySnapshotIsStableWhileEnrolling() {
+        TemplateGallery gallery = new TemplateGallery();
+        gallery.load(() -> gallery(1000));
+        List<TemplateGallery.Entry> snapshot = gallery.getEntries(ArrayList::new);
+
+        gallery.put(new TemplateGallery.Entry("USER_NEW", "New", template(4000)));
+        gallery.remove("USER_10");
+
+        assertEquals(1000, snapshot.size());
+        assertEquals("USER_10", engine.identify(new IdentificationRequest(template(10)), snapshot).getBest().getUserId());
+        assertEquals(1000, gallery.size());
+    }
+
+    @Test
+    public void topKKeepsOnlyTheBestCandidates() {
+        List<TemplateGallery.Entry> entries = gallery(3000);
+        byte[] probe = template(700);
+        IdentificationRequest all = new IdentificationRequest(probe).setThreshold(0);
+        IdentificationRequest top = new IdentificationRequest(probe).setThreshold(0).setTopK(5);
+
+        List<IdentificationEngine.Candidate> expected = engine.identify(all, entries).getCandidates();
+        List<IdentificationEngine.Candidate> result = engine.identify(top, entries).getCandidates();
+
+        assertEquals(5, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(expected.get(i).getScore(), result.get(i).getScore());
+        }
+        assertEquals("USER_700", result.get(0).getUserId());
+    }
+
+    @Test
+    public void acceptScoreStopsTheScanEarly() {
+        List<TemplateGallery.Entry> entries = gallery(20000);
+        IdentificationRequest request = new IdentificationRequest(template(3)).setTopK(1).setAcceptScore(900);
+
+        IdentificationResult result = engine.identify(request, entries);
+
+        assertTrue(result.isAccepted());
+        assertEquals("USER_3", result.getBest().getUserId());
+        assertTrue(result.getComparisons() < entries.size());
+    }
+
+    @Test
+    public void noEarlyAcceptBelowTheAcceptScore() {
+        List<TemplateGallery.Entry> entries = gallery(500);
+        IdentificationRequest request = new IdentificationRequest(template(9999)).setAcceptScore(900);
+
+        IdentificationResult result = engine.identify(request, entries);
+
+        assertFalse(result.isAccepted());
+        assertEquals(entries.size(), result.getComparisons());
+    }
+
+    @Test
+    public void searchFromInsideASharedPoolRunsInPlace() throws Exception {
+        ForkJoinPool shared = new ForkJoinPool(2);
+        IdentificationEngine onShared = new IdentificationEngine(PREFIX_MATCHER, shared);
+        try {
+            List<TemplateGallery.Entry> entries = gallery(2000);
+            List<IdentificationEngine.Candidate> result = shared.submit(
+                    () -> onShared.identify(new IdentificationRequest(template(1234)), entries).getCandidates()).get();
+
+            assertEquals("USER_1234", result.get(0).getUserId());
+        } finally {
+            onShared.shutdown();
+        }
+        // The pool belongs to whoever passed it in.
+        assertFalse(shared.isShutdown());
+        assertFalse(onShared.isShutdown());
+        shared.shutdown();
+        assertTrue(onShared.isShutdown());
+    }
+
+    @Test
+    public void verifyMatchesOnlyTheClaimedUser() {
+        TemplateGallery.Entry claimed = new TemplateGallery.Entry("USER_5", "Name 5", template(5));
+
+        VerificationResult same = engine.verify(template(5), "USER_5", claimed, 400);
+        assertTrue(same.isEnrolled());
+        assertTrue(same.isVerified());
+        assertEquals("Name 5", same.getUserName());
+        assertEquals(1000, same.getScore());
+
+        assertFalse(engine.verify(template(6), "USER_5", claimed, 400).isVerified());
+
+        VerificationResult unknown = engine.verify(template(5), "USER_99", null, 400);
+        assertFalse(unknown.isEnrolled());
+        assertFalse(unknown.isVerified());
+    }
+
+    @Test
+    public void recentlyIdentifiedUserIsSettledByTheHotPass() {
+        List<TemplateGallery.Entry> entries = gallery(5000);
+        RecentHits recent = new RecentHits();
+        engine.setRecentHits(recent);
+        IdentificationRequest request = new IdentificationRequest(template(3210)).setAcceptScore(900);
+
+        IdentificationResult first = engine.identify(request, entries);
+        assertEquals("USER_3210", first.getBest().getUserId());
+        assertEquals(1, recent.size());
+
+        IdentificationResult second = engine.identify(request, entries);
+        assertEquals("USER_3210", second.getBest().getUserId());
+        assertTrue(second.isAccepted());
+        assertEquals(1, second.getComparisons());
+        assertEquals(1, recent.getHits());
+    }
+
+    @Test
+    public void hotPassMissFallsBackWithoutComparingTwice() {
+        List<TemplateGallery.Entry> entries = gallery(2000);
+        RecentHits recent = new RecentHits();
+        for (int i = 0; i < 10; i++) recent.record(entries.get(i));
+        engine.setRecentHits(recent);
+
+        // Nobody reaches the accept score, so the whole gallery is searched, each entry once.
+        IdentificationResult result = engine.identify(new IdentificationRequest(template(1500)).setThreshold(0).setAcceptScore(1001), entries);
+        assertEquals("USER_1500", result.getBest().getUserId());
+        assertEquals(entries.size(), result.getComparisons());
+        assertEquals(0, recent.getHits());
+        assertEquals(1, recent.getSearches());
+    }
+
+    @Test
+    public void searchCancelledBeforeItStartsComparesNothing() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        IdentificationResult result = engine.identify(new IdentificationRequest(template(7)).setCancellationToken(token), gallery(500));
+        assertTrue(result.isCancelled());
+        assertTrue(result.isPartial());
+        assertEquals(0, result.getComparisons());
+        assertNull(result.getBest());
+    }
+
+    @Test
+    public void timeBudgetReturnsTheBestSoFar() {
+        // About 1 ms per comparison, so the whole gallery would take far longer than the budget.
+        // Every comparison clears a threshold of -1, so whatever was compared is a candidate.
+        TemplateMatcher slow = (probe, reference) -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return PREFIX_MATCHER.match(probe, reference);
+        };
+        IdentificationEngine slowEngine = new IdentificationEngine(slow, 2);
+        try {
+            List<TemplateGallery.Entry> entries = gallery(20000);
+            long start = System.nanoTime();
+            IdentificationResult result = slowEngine.identify(
+                    new IdentificationRequest(template(5)).setThreshold(-1).setTimeBudgetMs(100), entries);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(result.isPartial());
+            assertFalse(result.isCancelled());
+            assertTrue(result.getComparisons() > 0);
+            assertTrue(result.getComparisons() < entries.size());
+            assertFalse(result.getCandidates().isEmpty());
+            assertTrue("took " + elapsedMs + " ms", elapsedMs < 1000);
+        } finally {
+            slowEngine.shutdown();
+        }
+    }
+
+    @Test
+    public void searchThatFinishesInTimeIsNotPartial() {
+        IdentificationResult result = engine.identify(
+                new IdentificationRequest(template(42)).setTimeBudgetMs(60_000).setCancellationToken(new CancellationToken()), gallery(1000));
+        assertFalse(result.isPartial());
+        assertEquals("USER_42", result.getBest().getUserId());
+        assertEquals(1000, result.getComparisons());
+    }
+
+    @Test
+    public void matcherThatIsNotConcurrentIsCalledFromOneThreadAtATime() {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        TemplateMatcher serial = new TemplateMatcher() {
+            @Override
+            public int match(byte[] probe, byte[] reference) {
+                if (inside.incrementAndGet() > 1) overlaps.incrementAndGet();
+                int score = PREFIX_MATCHER.match(probe, reference);
+                inside.decrementAndGet();
+                return score;
+            }
+
+            @Override
+            public boolean isConcurrent() { return false; }
+        };
+        IdentificationEngine serialEngine = new IdentificationEngine(serial, 4);
+        try {
+            IdentificationResult result = serialEngine.identify(new IdentificationRequest(template(1234)), gallery(3000));
+            assertEquals("USER_1234", result.getCandidates().get(0).getUserId());
+            assertEquals(3000, result.getComparisons());
+            assertEquals(0, overlaps.get());
+        } finally {
+            serialEngine.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acceptScoreAtOrBelowTheThresholdIsRejected() {
+        engine.identify(new IdentificationRequest(template(1)).setThreshold(500).setAcceptScore(500), gallery(10));
+    }
+}
@@ -0,0 +1,55 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KioskSessionTest {
+
+    // Same first byte = same finger.
+    private static final TemplateMatcher MATCHER = (probe, reference) -> probe[0] == reference[0] ? 1000 : 10;
+
+    private static byte[] finger(int id) {
+        return new byte[] {(byte) id};
+    }
+
+    @Test
+    public void restingFingerIsOnlyIdentifiedOnce() {
+        KioskSession session = new KioskSession(MATCHER, 2000, 600, 0);
+
+        assertFalse(session.isRepeat(finger(1), 0));
+        // Still on the sensor: each capture extends the hold.
+        assertTrue(session.isRepeat(finger(1), 1500));
+        assertTrue(session.isRepeat(finger(1), 3000));
+        assertTrue(session.isRepeat(finger(1), 4500));
+        assertEquals(3, session.getRepeats());
+
+        // Lifted long enough, then presented again.
+        assertFalse(session.isRepeat(finger(1), 8000));
+    }
+
+    @Test
+    public void differentFingerIsNeverARepeat() {
+        KioskSession session = new KioskSession(MATCHER, 2000, 600, 0);
+
+        assertFalse(session.isRepeat(finger(1), 0));
+        assertFalse(session.isRepeat(finger(2), 100));
+        // Compared with the latest new finger, not the first one.
+        assertTrue(session.isRepeat(finger(2), 200));
+        assertFalse(session.isRepeat(finger(1), 300));
+    }
+
+    @Test
+    public void ratesCoverTheLastMinuteAndTheWholeSession() {
+        KioskSession session = new KioskSession(MATCHER, 2000, 600, 0);
+        for (int i = 0; i < 30; i++) session.recordIdentification(i % 3 != 0, i * 2000L);
+
+        // 30 in the first minute.
+        assertEquals(30.0, session.getPerMinute(60_000), 1.0);
+        assertEquals(20, session.getMatches());
+
+        // Nothing for the next minute: the recent rate drops, the overall rate halves.
+        assertEquals(0.0, session.getPerMinute(121_000), 0.001);
+        assertEquals(15.0, session.getSustainedPerMinute(120_000), 0.001);
+    }
+}
@@ -0,0 +1,68 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static void assertWithin(long expected, long actual, double tolerance) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * tolerance);
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) h.recordMicros(ms * 1000L);
+
+        assertEquals(1000, h.getCount());
+        assertWithin(500_000, h.getPercentileMicros(50), 0.125);
+        assertWithin(950_000, h.getPercentileMicros(95), 0.125);
+        assertWithin(990_000, h.getPercentileMicros(99), 0.125);
+        assertEquals(1_000_000, h.getMaxMicros());
+        assertEquals(500_500, h.getMeanMicros(), 1);
+    }
+
+    @Test
+    public void percentileNeverExceedsTheMax() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.recordNanos(2_100_000);
+
+        assertTrue(h.getPercentileMicros(99) <= 2100);
+        assertWithin(2100, h.getPercentileMicros(99), 0.125);
+    }
+
+    @Test
+    public void bucketsCoverEveryValueContiguously() {
+        for (long v = 0; v < 100_000; v++) {
+            int b = LatencyHistogram.bucketOf(v);
+            assertTrue(LatencyHistogram.lowerBound(b) <= v);
+            assertTrue(LatencyHistogram.lowerBound(b + 1) > v);
+        }
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentileMicros(50));
+        h.recordMicros(42);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentileMicros(99));
+    }
+
+    @Test
+    public void reportListsOnlyStagesWithSamples() {
+        StageTimings timings = new StageTimings();
+        timings.stage("test.capture").getHistogram().recordMicros(12_000);
+        timings.stage("test.idle");
+
+        List<String> report = timings.report();
+
+        assertEquals(2, report.size());
+        assertTrue(report.get(1).startsWith("test.capture"));
+    }
+}
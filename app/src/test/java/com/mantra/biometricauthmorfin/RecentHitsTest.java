@@ -0,0 +1,93 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecentHitsTest {
+
+    private static TemplateGallery.Entry user(int id) {
+        return new TemplateGallery.Entry("USER_" + id, "Name " + id, new byte[] {(byte) id});
+    }
+
+    @Test
+    public void frequentAndRecentUsersComeFirst() {
+        RecentHits recent = new RecentHits(16, 2);
+        recent.record(user(1));
+        recent.record(user(1));
+        recent.record(user(2));
+        recent.record(user(3));
+
+        List<TemplateGallery.Entry> hot = recent.getHotEntries();
+        assertEquals(2, hot.size());
+        assertEquals("USER_1", hot.get(0).getUserId());
+        // Same count, but seen more recently.
+        assertEquals("USER_3", hot.get(1).getUserId());
+    }
+
+    @Test
+    public void oldHitsFade() {
+        RecentHits recent = new RecentHits(16, 16);
+        for (int i = 0; i < 3; i++) recent.record(user(1));
+        // Three half-lives later, two fresh hits outweigh three old ones.
+        for (int i = 0; i < 3 * RecentHits.HALF_LIFE_HITS; i++) recent.record(user(100 + i % 10));
+        recent.record(user(2));
+        recent.record(user(2));
+
+        int first = -1, second = -1;
+        List<TemplateGallery.Entry> hot = recent.getHotEntries();
+        for (int i = 0; i < hot.size(); i++) {
+            if (hot.get(i).getUserId().equals("USER_1")) first = i;
+            if (hot.get(i).getUserId().equals("USER_2")) second = i;
+        }
+        assertTrue(second >= 0 && second < first);
+    }
+
+    @Test
+    public void lightestUserIsEvictedAtCapacity() {
+        RecentHits recent = new RecentHits(2, 4);
+        recent.record(user(1));
+        recent.record(user(1));
+        recent.record(user(2));
+        recent.record(user(3));
+
+        assertEquals(2, recent.size());
+        List<TemplateGallery.Entry> hot = recent.getHotEntries();
+        assertEquals("USER_1", hot.get(0).getUserId());
+        assertEquals("USER_3", hot.get(1).getUserId());
+    }
+
+    @Test
+    public void galleryChangesAreFollowed() {
+        RecentHits recent = new RecentHits(16, 4);
+        recent.record(user(1));
+        recent.record(user(2));
+
+        recent.onEntryAdded(new TemplateGallery.Entry("USER_1", "Renamed", new byte[] {1}));
+        recent.onEntryRemoved("USER_2");
+        assertEquals(1, recent.getHotEntries().size());
+        assertEquals("Renamed", recent.getHotEntries().get(0).getUserName());
+
+        // Only users already tracked are picked up.
+        recent.onEntryAdded(user(5));
+        assertEquals(1, recent.size());
+
+        recent.onCleared();
+        assertTrue(recent.getHotEntries().isEmpty());
+    }
+
+    @Test
+    public void timeSavedIsPricedAgainstTheAverageFullSearch() {
+        RecentHits recent = new RecentHits();
+        recent.recordFullSearch(10_000_000);
+        recent.recordMiss(1_000_000, 10_000_000);
+        recent.recordHit(1_000_000);
+        recent.recordHit(1_000_000);
+
+        assertEquals(2 / 3f, recent.getHitRate(), 0.001);
+        // Two hits save 9 ms each; the miss wasted 1 ms.
+        assertEquals(17_000_000, recent.getTimeSavedNanos());
+    }
+}
@@ -0,0 +1,76 @@
+package com.mantra.biometricauthmorfin;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TemplateCacheTest {
+
+    private final List<String> loads = new ArrayList<>();
+
+    private TemplateGallery.Entry load(String userId) {
+        loads.add(userId);
+        return userId.startsWith("missing") ? null : new TemplateGallery.Entry(userId, "Name", new byte[] {1});
+    }
+
+    @Test
+    public void secondLookupIsServedFromTheCache() {
+        TemplateCache cache = new TemplateCache(4);
+        TemplateGallery.Entry first = cache.get("USER_001", this::load);
+        assertSame(first, cache.get("USER_001", this::load));
+        assertEquals(1, loads.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        TemplateCache cache = new TemplateCache(2);
+        cache.get("a", this::load);
+        cache.get("b", this::load);
+        cache.get("a", this::load);
+        cache.get("c", this::load);
+        loads.clear();
+
+        cache.get("a", this::load);
+        assertTrue(loads.isEmpty());
+        cache.get("b", this::load);
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    public void unknownUsersAreNotCached() {
+        TemplateCache cache = new TemplateCache(4);
+        assertNull(cache.get("missing", this::load));
+        assertNull(cache.get("missing", this::load));
+        assertEquals(2, loads.size());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidatedUserIsLoadedAgain() {
+        TemplateCache cache = new TemplateCache(4);
+        cache.get("a", this::load);
+        cache.invalidate("a");
+        cache.get("a", this::load);
+        cache.invalidateAll();
+        cache.get("a", this::load);
+        assertEquals(3, loads.size());
+    }
+
+    @Test
+    public void loadRacingAnInvalidationIsNotKept() {
+        TemplateCache cache = new TemplateCache(4);
+        // The row is deleted (and the cache invalidated) after the loader has read the old template.
+        TemplateGallery.Entry stale = cache.get("a", userId -> {
+            TemplateGallery.Entry read = load(userId);
+            cache.invalidate(userId);
+            return read;
+        });
+        assertNotNull(stale);
+        assertEquals(0, cache.size());
+    }
+}
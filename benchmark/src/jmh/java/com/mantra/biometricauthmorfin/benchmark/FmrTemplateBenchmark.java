@@ -0,0 +1,65 @@
+package com.mantra.biometricauthmorfin.benchmark;
+
+import com.mantra.biometricauthmorfin.CandidateIndex;
+import com.mantra.biometricauthmorfin.FmrTemplate;
+import com.mantra.biometricauthmorfin.MinutiaeMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FmrTemplateBenchmark {
+
+    private byte[] template;
+    private byte[] recapture;
+    private ByteBuffer directBuffer;
+    private FmrTemplate parsed;
+    private FmrTemplate parsedRecapture;
+    private final MinutiaeMatcher matcher = new MinutiaeMatcher();
+
+    @Setup
+    public void setUp() {
+        template = Galleries.FINGERS.template(42);
+        recapture = Galleries.FINGERS.capture(42, new Random(3));
+        directBuffer = ByteBuffer.allocateDirect(template.length);
+        directBuffer.put(template).flip();
+        parsed = FmrTemplate.parse(template);
+        parsedRecapture = FmrTemplate.parse(recapture);
+    }
+
+    @Benchmark
+    public FmrTemplate parseHeapArray() {
+        return FmrTemplate.parse(template);
+    }
+
+    @Benchmark
+    public FmrTemplate parseDirectBuffer() {
+        return FmrTemplate.parse(directBuffer);
+    }
+
+    @Benchmark
+    public CandidateIndex.Features extractFeatures() {
+        return CandidateIndex.extract(template);
+    }
+
+    @Benchmark
+    public int matchParsed() {
+        return matcher.match(parsed, parsedRecapture);
+    }
+
+    @Benchmark
+    public int matchRawBytes() {
+        return matcher.match(template, recapture);
+    }
+}
@@ -0,0 +1,23 @@
+package com.mantra.biometricauthmorfin.benchmark;
+
+import com.mantra.biometricauthmorfin.SyntheticFingers;
+import com.mantra.biometricauthmorfin.TemplateGallery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class Galleries {
+
+    static final SyntheticFingers FINGERS = new SyntheticFingers(7, 300, 400);
+
+    private Galleries() {}
+
+    // Finger i is enrolled as USER_i, so a capture of finger i is a genuine probe for it.
+    static List<TemplateGallery.Entry> synthetic(int size) {
+        List<TemplateGallery.Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new TemplateGallery.Entry(String.format("USER_%03d", i), "User " + i, FINGERS.template(i)));
+        }
+        return entries;
+    }
+}
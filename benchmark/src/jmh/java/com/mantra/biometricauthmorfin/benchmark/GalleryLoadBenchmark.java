@@ -0,0 +1,54 @@
+package com.mantra.biometricauthmorfin.benchmark;
+
+import com.mantra.biometricauthmorfin.TemplateGallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GalleryLoadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    private List<TemplateGallery.Entry> rows;
+    private TemplateGallery loaded;
+    private TemplateGallery.Entry enrollee;
+
+    @Setup
+    public void setUp() {
+        rows = Galleries.synthetic(gallerySize);
+        loaded = new TemplateGallery();
+        loaded.load(() -> rows);
+        enrollee = new TemplateGallery.Entry("USER_NEW", "New User", Galleries.FINGERS.template(gallerySize + 7));
+    }
+
+    @Benchmark
+    public int coldLoad() {
+        TemplateGallery gallery = new TemplateGallery();
+        gallery.load(() -> rows);
+        return gallery.size();
+    }
+
+    @Benchmark
+    public int enrollIntoLoadedGallery() {
+        loaded.put(enrollee);
+        return loaded.size();
+    }
+
+    @Benchmark
+    public TemplateGallery.Entry lookupById() {
+        return loaded.get("USER_" + (gallerySize / 2));
+    }
+}
@@ -0,0 +1,110 @@
+package com.mantra.biometricauthmorfin.benchmark;
+
+import com.mantra.biometricauthmorfin.CandidateIndex;
+import com.mantra.biometricauthmorfin.IdentificationEngine;
+import com.mantra.biometricauthmorfin.IdentificationRequest;
+import com.mantra.biometricauthmorfin.IdentificationResult;
+import com.mantra.biometricauthmorfin.MinutiaeMatcher;
+import com.mantra.biometricauthmorfin.RecentHits;
+import com.mantra.biometricauthmorfin.TemplateGallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IdentificationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    private List<TemplateGallery.Entry> gallery;
+    private IdentificationEngine parallelEngine;
+    private IdentificationEngine singleThreadEngine;
+    private IdentificationEngine prefilteredEngine;
+    private IdentificationEngine recentHitsEngine;
+    private byte[] genuineProbe;
+    private byte[] impostorProbe;
+
+    @Setup
+    public void setUp() {
+        gallery = Galleries.synthetic(gallerySize);
+        genuineProbe = Galleries.FINGERS.capture(gallerySize / 2, new Random(1));
+        impostorProbe = Galleries.FINGERS.capture(gallerySize + 1, new Random(2));
+
+        MinutiaeMatcher matcher = new MinutiaeMatcher();
+        parallelEngine = new IdentificationEngine(matcher, Runtime.getRuntime().availableProcessors());
+        singleThreadEngine = new IdentificationEngine(matcher, 1);
+
+        CandidateIndex index = new CandidateIndex();
+        index.setShortlistFraction(0.1f);
+        index.setRecallSampleInterval(0);
+        index.shortlist(genuineProbe, gallery);
+        prefilteredEngine = new IdentificationEngine(matcher, Runtime.getRuntime().availableProcessors());
+        prefilteredEngine.setCandidateIndex(index);
+
+        // A door where the genuine user is one of the regulars.
+        RecentHits recentHits = new RecentHits();
+        Random regulars = new Random(3);
+        for (int i = 0; i < 200; i++) recentHits.record(gallery.get(regulars.nextInt(gallerySize)));
+        recentHits.record(gallery.get(gallerySize / 2));
+        recentHitsEngine = new IdentificationEngine(matcher, Runtime.getRuntime().availableProcessors());
+        recentHitsEngine.setRecentHits(recentHits);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parallelEngine.shutdown();
+        singleThreadEngine.shutdown();
+        prefilteredEngine.shutdown();
+        recentHitsEngine.shutdown();
+    }
+
+    @Benchmark
+    public IdentificationResult singleThreadFullScan() {
+        return singleThreadEngine.identify(new IdentificationRequest(genuineProbe), gallery);
+    }
+
+    @Benchmark
+    public IdentificationResult parallelFullScan() {
+        return parallelEngine.identify(new IdentificationRequest(genuineProbe), gallery);
+    }
+
+    @Benchmark
+    public IdentificationResult parallelImpostor() {
+        return parallelEngine.identify(new IdentificationRequest(impostorProbe), gallery);
+    }
+
+    @Benchmark
+    public IdentificationResult topKWithEarlyAccept() {
+        return parallelEngine.identify(new IdentificationRequest(genuineProbe).setTopK(5).setAcceptScore(800), gallery);
+    }
+
+    @Benchmark
+    public IdentificationResult prefilteredScan() {
+        return prefilteredEngine.identify(new IdentificationRequest(genuineProbe).setTopK(5), gallery);
+    }
+
+    @Benchmark
+    public IdentificationResult recentHitEarlyAccept() {
+        return recentHitsEngine.identify(new IdentificationRequest(genuineProbe).setTopK(5).setAcceptScore(800), gallery);
+    }
+
+    // What a miss costs: the hot pass, then the full scan.
+    @Benchmark
+    public IdentificationResult recentHitImpostor() {
+        return recentHitsEngine.identify(new IdentificationRequest(impostorProbe).setTopK(5).setAcceptScore(800), gallery);
+    }
+}
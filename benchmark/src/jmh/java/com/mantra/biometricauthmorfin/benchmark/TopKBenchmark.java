@@ -0,0 +1,58 @@
+package com.mantra.biometricauthmorfin.benchmark;
+
+import com.mantra.biometricauthmorfin.IdentificationEngine;
+import com.mantra.biometricauthmorfin.TopKCandidates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TopKBenchmark {
+
+    @Param({"10000", "100000"})
+    public int candidates;
+
+    @Param({"1", "10"})
+    public int k;
+
+    private int[] scores;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        scores = new int[candidates];
+        for (int i = 0; i < candidates; i++) scores[i] = random.nextInt(1001);
+    }
+
+    @Benchmark
+    public List<IdentificationEngine.Candidate> boundedHeap() {
+        TopKCandidates top = new TopKCandidates(k);
+        for (int i = 0; i < scores.length; i++) {
+            if (top.accepts(scores[i])) top.offer(new IdentificationEngine.Candidate("USER", null, scores[i]));
+        }
+        return top.toSortedList();
+    }
+
+    // What MatchActivity did before: keep everything, sort, then look at the head.
+    @Benchmark
+    public List<IdentificationEngine.Candidate> collectAndSort() {
+        List<IdentificationEngine.Candidate> all = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) all.add(new IdentificationEngine.Candidate("USER", null, scores[i]));
+        Collections.sort(all);
+        return all.subList(0, Math.min(k, all.size()));
+    }
+}
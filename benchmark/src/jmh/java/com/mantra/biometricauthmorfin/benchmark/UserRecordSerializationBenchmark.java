@@ -0,0 +1,119 @@
+package com.mantra.biometricauthmorfin.benchmark;
+
+import com.mantra.biometricauthmorfin.TemplateGallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// (user_id, user_name, template) rows, the shape of FingerprintDatabaseHelper.UserRecord
+// as it is stored and loaded for matching.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserRecordSerializationBenchmark {
+
+    @Param({"10000"})
+    public int records;
+
+    private List<TemplateGallery.Entry> entries;
+    private byte[] streamEncoded;
+    private ByteBuffer bufferEncoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        entries = Galleries.synthetic(records);
+        streamEncoded = writeStream();
+        bufferEncoded = writeBuffer();
+    }
+
+    @Benchmark
+    public byte[] writeStream() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (TemplateGallery.Entry e : entries) {
+                out.writeUTF(e.getUserId());
+                out.writeUTF(e.getUserName());
+                out.writeInt(e.getTemplate().length);
+                out.write(e.getTemplate());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public List<TemplateGallery.Entry> readStream() throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(streamEncoded))) {
+            int count = in.readInt();
+            List<TemplateGallery.Entry> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String name = in.readUTF();
+                byte[] template = new byte[in.readInt()];
+                in.readFully(template);
+                result.add(new TemplateGallery.Entry(id, name, template));
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer writeBuffer() {
+        int size = 4;
+        for (TemplateGallery.Entry e : entries) {
+            size += 12 + e.getUserId().length() + e.getUserName().length() * 3 + e.getTemplate().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(entries.size());
+        for (TemplateGallery.Entry e : entries) {
+            putString(buffer, e.getUserId());
+            putString(buffer, e.getUserName());
+            buffer.putInt(e.getTemplate().length).put(e.getTemplate());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public List<TemplateGallery.Entry> readBuffer() {
+        ByteBuffer buffer = bufferEncoded.duplicate();
+        int count = buffer.getInt();
+        List<TemplateGallery.Entry> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = getString(buffer);
+            String name = getString(buffer);
+            byte[] template = new byte[buffer.getInt()];
+            buffer.get(template);
+            result.add(new TemplateGallery.Entry(id, name, template));
+        }
+        return result;
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(utf8.length).put(utf8);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] utf8 = new byte[buffer.getInt()];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}